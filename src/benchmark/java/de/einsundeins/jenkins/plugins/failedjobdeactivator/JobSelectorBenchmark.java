@@ -0,0 +1,86 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 Jochen A. Fuerbacher, 1&1 Telecommunication SE
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.einsundeins.jenkins.plugins.failedjobdeactivator;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Selecting jobs by name, which the detection does for every item it visits.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class JobSelectorBenchmark {
+
+	@Param({"1000", "10000", "100000"})
+	int jobs;
+
+	@Param({"regex", "mixed"})
+	String rules;
+
+	private String[] fullNames;
+	private String[] folders;
+	private JobSelector selector;
+
+	@Setup
+	public void setUp() {
+		fullNames = SyntheticJobs.fullNames(jobs);
+		folders = SyntheticJobs.folders(fullNames);
+		if ("regex".equals(rules))
+			selector = JobSelector.forRegex("team-1.*-release");
+		else
+			selector = new JobSelector(
+					"glob:team-1*/**\nfolder:team-2/service-3\nregex:.*-release",
+					"folder:team-13\nglob:**/job-4?");
+	}
+
+	@Benchmark
+	public void matchFullNames(Blackhole blackhole) {
+		for (String fullName : fullNames)
+			blackhole.consume(selector.matches(fullName));
+	}
+
+	@Benchmark
+	public void decideFolders(Blackhole blackhole) {
+		for (String folder : folders)
+			blackhole.consume(selector.decide(folder));
+	}
+
+}
@@ -0,0 +1,93 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 Jochen A. Fuerbacher, 1&1 Telecommunication SE
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.einsundeins.jenkins.plugins.failedjobdeactivator;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Publishing, paging and handling a detection result.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ResultTableBenchmark {
+
+	@Param({"1000", "10000", "100000"})
+	int jobs;
+
+	private String[] fullNames;
+	private JobHealthIndex.Entry[] entries;
+	private ResultTable table;
+
+	@Setup
+	public void setUp() {
+		fullNames = SyntheticJobs.fullNames(jobs);
+		entries = SyntheticJobs.entries(jobs, System.currentTimeMillis());
+		table = SyntheticJobs.resultTable(fullNames, entries);
+		// The sort orders are computed once per table.
+		table.query(null, ResultTable.SORT_NAME, false);
+		table.query(null, ResultTable.SORT_LAST_BUILD, false);
+	}
+
+	@Benchmark
+	public ResultTable build() {
+		return SyntheticJobs.resultTable(fullNames, entries);
+	}
+
+	@Benchmark
+	public int[] queryFilteredPage() {
+		return table.query("release", ResultTable.SORT_LAST_BUILD, true);
+	}
+
+	@Benchmark
+	public int[] queryUnfiltered() {
+		return table.query(null, ResultTable.SORT_NAME, false);
+	}
+
+	/**
+	 * Looks up every detected job like the validation before handling.
+	 */
+	@Benchmark
+	public void validateHandling(Blackhole blackhole) {
+		for (String fullName : fullNames)
+			blackhole.consume(table.getRow(fullName));
+	}
+
+}
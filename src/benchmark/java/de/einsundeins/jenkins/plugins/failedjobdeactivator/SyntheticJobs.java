@@ -0,0 +1,97 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 Jochen A. Fuerbacher, 1&1 Telecommunication SE
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.einsundeins.jenkins.plugins.failedjobdeactivator;
+
+import java.util.Random;
+
+/**
+ * Generates job models for the benchmarks without a running Jenkins. Jobs
+ * are spread over two levels of folders, like in larger instances.
+ */
+final class SyntheticJobs {
+
+	static final long DAY = Constants.DAYS_TO_64BIT_UNIXTIME;
+
+	private static final int JOBS_PER_FOLDER = 50;
+	private static final int FOLDERS_PER_TEAM = 20;
+
+	private SyntheticJobs() {
+	}
+
+	/**
+	 * @return full names like <code>team-3/service-7/job-12</code>
+	 */
+	static String[] fullNames(int count) {
+		String[] names = new String[count];
+		for (int i = 0; i < count; i++) {
+			int folder = i / JOBS_PER_FOLDER;
+			names[i] = "team-" + folder / FOLDERS_PER_TEAM + "/service-"
+					+ folder % FOLDERS_PER_TEAM + "/job-"
+					+ i % JOBS_PER_FOLDER + (i % 7 == 0 ? "-release" : "");
+		}
+		return names;
+	}
+
+	/**
+	 * @return the full names of the folders containing the given jobs
+	 */
+	static String[] folders(String[] fullNames) {
+		String[] folders = new String[fullNames.length];
+		for (int i = 0; i < fullNames.length; i++)
+			folders[i] = fullNames[i].substring(0,
+					fullNames[i].lastIndexOf('/'));
+		return folders;
+	}
+
+	/**
+	 * @return build times within the last year, about a third of the jobs
+	 *         without any successful build
+	 */
+	static JobHealthIndex.Entry[] entries(int count, long now) {
+		Random random = new Random(count);
+		JobHealthIndex.Entry[] entries = new JobHealthIndex.Entry[count];
+		for (int i = 0; i < count; i++) {
+			long firstBuild = now - (1 + random.nextInt(365)) * DAY;
+			long lastBuild = firstBuild
+					+ (long) (random.nextDouble() * (now - firstBuild));
+			long lastSuccessfulBuild = random.nextInt(3) == 0
+					? JobHealthIndex.NO_BUILD
+					: firstBuild + (long) (random.nextDouble()
+							* (lastBuild - firstBuild));
+			entries[i] = new JobHealthIndex.Entry(firstBuild,
+					lastSuccessfulBuild, lastBuild);
+		}
+		return entries;
+	}
+
+	static ResultTable resultTable(String[] fullNames,
+			JobHealthIndex.Entry[] entries) {
+		ResultTable.Builder builder = new ResultTable.Builder();
+		for (int i = 0; i < fullNames.length; i++)
+			builder.add(fullNames[i], entries[i].getLastSuccessfulBuild(),
+					entries[i].getLastBuild(), ResultTable.STATUS_CAN_DISABLE);
+		return builder.build();
+	}
+
+}
@@ -0,0 +1,251 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 Jochen A. Fuerbacher, 1&1 Telecommunication SE
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.einsundeins.jenkins.plugins.failedjobdeactivator;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+
+/**
+ * Information about the builds of a job, read from the build directory
+ * without loading any build.xml.
+ *
+ * <p>
+ * The build numbers are taken from the directory names, the last successful
+ * build from the <code>permalinks</code> file or the
+ * <code>lastSuccessfulBuild</code> symlink. The start time of a build is
+ * exact if the build directory is named by its legacy ID. Otherwise only an
+ * upper bound is known: the build directory is created when the build
+ * starts, so its creation and modification times are never before the start
+ * time.
+ */
+class BuildMetadata {
+
+	private static Logger logger = Logger
+			.getLogger(BuildMetadata.class.getName());
+
+	/**
+	 * Build number of a permalink which could not be read.
+	 */
+	static final int UNKNOWN = Integer.MIN_VALUE;
+
+	/**
+	 * Build number of a permalink which points to no build.
+	 */
+	static final int NONE = -1;
+
+	private static final String PERMALINKS_FILE = "permalinks";
+	private static final String LAST_SUCCESSFUL_BUILD = "lastSuccessfulBuild";
+	private static final Pattern BUILD_NUMBER = Pattern.compile("[0-9]+");
+	private static final Pattern LEGACY_ID = Pattern
+			.compile("[0-9]{4}-[0-9]{2}-[0-9]{2}_[0-9]{2}-[0-9]{2}-[0-9]{2}");
+	private static final String LEGACY_ID_FORMAT = "yyyy-MM-dd_HH-mm-ss";
+
+	private final Path buildDir;
+	// Build directories by build number
+	private final TreeMap<Integer, Path> builds;
+	private final int lastSuccessfulBuild;
+
+	private BuildMetadata(Path buildDir, TreeMap<Integer, Path> builds,
+			int lastSuccessfulBuild) {
+		this.buildDir = buildDir;
+		this.builds = builds;
+		this.lastSuccessfulBuild = lastSuccessfulBuild;
+	}
+
+	/**
+	 * @return the metadata or null, if the build directory could not be read
+	 */
+	static BuildMetadata read(File buildDir) {
+		Path dir = buildDir.toPath();
+		TreeMap<Integer, Path> builds = new TreeMap<>();
+
+		if (!Files.isDirectory(dir))
+			return new BuildMetadata(dir, builds, NONE);
+
+		try (DirectoryStream<Path> entries = Files.newDirectoryStream(dir)) {
+			for (Path entry : entries) {
+				String name = entry.getFileName().toString();
+				if (!BUILD_NUMBER.matcher(name).matches())
+					continue;
+				try {
+					builds.put(Integer.valueOf(name), entry);
+				} catch (NumberFormatException e) {
+					// Too large to be a build number.
+				}
+			}
+		} catch (IOException e) {
+			logger.log(Level.FINE, "Cannot read build directory " + dir, e);
+			return null;
+		}
+
+		return new BuildMetadata(dir, builds, readLastSuccessfulBuild(dir));
+	}
+
+	private static int readLastSuccessfulBuild(Path dir) {
+		// Newer Jenkins versions keep all permalinks in a single file.
+		Path permalinks = dir.resolve(PERMALINKS_FILE);
+		if (Files.isRegularFile(permalinks)) {
+			try (BufferedReader reader = Files.newBufferedReader(permalinks,
+					StandardCharsets.UTF_8)) {
+				String line;
+				while ((line = reader.readLine()) != null) {
+					String[] parts = line.trim().split(" ");
+					if (parts.length == 2
+							&& parts[0].equals(LAST_SUCCESSFUL_BUILD))
+						return parseBuildNumber(parts[1]);
+				}
+				// Jenkins adds permalinks when they are first computed, so a
+				// missing one is not known yet.
+				return UNKNOWN;
+			} catch (IOException e) {
+				return UNKNOWN;
+			}
+		}
+
+		// Older Jenkins versions keep a symlink per permalink.
+		try {
+			return parseBuildNumber(Files
+					.readSymbolicLink(dir.resolve(LAST_SUCCESSFUL_BUILD))
+					.toString());
+		} catch (IOException | UnsupportedOperationException e) {
+			// No symlink, e.g. on Windows.
+			return UNKNOWN;
+		}
+	}
+
+	private static int parseBuildNumber(String value) {
+		try {
+			int number = Integer.parseInt(value.trim());
+			return number > 0 ? number : NONE;
+		} catch (NumberFormatException e) {
+			return UNKNOWN;
+		}
+	}
+
+	boolean hasBuilds() {
+		return getFirstBuild() != NONE;
+	}
+
+	/**
+	 * @return the numbers of all build directories, the lowest first
+	 */
+	List<Integer> getBuildNumbers() {
+		return new ArrayList<>(builds.keySet());
+	}
+
+	/**
+	 * @return the lowest build number with a build record or {@link #NONE}
+	 */
+	int getFirstBuild() {
+		for (Integer number : builds.keySet()) {
+			if (Files.exists(builds.get(number).resolve("build.xml")))
+				return number;
+		}
+		return NONE;
+	}
+
+	/**
+	 * @return the number of the last successful build, {@link #NONE} or
+	 *         {@link #UNKNOWN}
+	 */
+	int getLastSuccessfulBuild() {
+		return lastSuccessfulBuild;
+	}
+
+	/**
+	 * @return the exact start time of the build or -1, if it is not known
+	 *         exactly
+	 */
+	long getExactStartTime(int number) {
+		Path build = builds.get(number);
+		if (build == null)
+			return -1;
+
+		String id = build.getFileName().toString();
+		if (Files.isSymbolicLink(build)) {
+			try {
+				id = Files.readSymbolicLink(build).getFileName().toString();
+			} catch (IOException | UnsupportedOperationException e) {
+				return -1;
+			}
+		}
+
+		if (!LEGACY_ID.matcher(id).matches())
+			return -1;
+
+		try {
+			// Legacy IDs are formatted in the local time zone.
+			return new SimpleDateFormat(LEGACY_ID_FORMAT).parse(id).getTime();
+		} catch (ParseException e) {
+			return -1;
+		}
+	}
+
+	/**
+	 * @return a time the build has not started after or -1, if the build
+	 *         directory can not be read
+	 */
+	long getLatestStartTime(int number) {
+		long exact = getExactStartTime(number);
+		if (exact != -1)
+			return exact;
+
+		Path build = builds.get(number);
+		if (build == null)
+			return -1;
+
+		try {
+			BasicFileAttributes attributes = Files.readAttributes(build,
+					BasicFileAttributes.class);
+			// Where the creation time is not supported, it is the
+			// modification time.
+			return Math.min(attributes.creationTime().toMillis(),
+					attributes.lastModifiedTime().toMillis());
+		} catch (IOException e) {
+			return -1;
+		}
+	}
+
+	/**
+	 * @return the modification time of the build directory itself
+	 */
+	long getBuildDirLastModified() {
+		return buildDir.toFile().lastModified();
+	}
+
+}
@@ -0,0 +1,167 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 Jochen A. Fuerbacher, 1&1 Telecommunication SE
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.einsundeins.jenkins.plugins.failedjobdeactivator;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import hudson.model.Job;
+import hudson.model.Run;
+
+/**
+ * Deletes the old builds of a job, but keeps the job and its configuration.
+ * A build is deleted, if it is neither among the newest builds to keep nor
+ * started within the days to keep.
+ *
+ * <p>
+ * The build numbers are read from the build directory, so builds are only
+ * loaded to get deleted, one batch at a time. The last build and the last
+ * successful build are always kept, as well as builds kept forever and
+ * builds still running. A build whose start time is not known from its
+ * directory counts as started within the days to keep.
+ */
+public class BuildPruner {
+
+	private static Logger logger = Logger
+			.getLogger(BuildPruner.class.getName());
+
+	/**
+	 * Number of builds loaded at the same time.
+	 */
+	static final int BATCH_SIZE = Integer
+			.getInteger(BuildPruner.class.getName() + ".batchSize", 50);
+
+	public static final int DEFAULT_KEEP_BUILDS = 5;
+
+	private final int keepBuilds;
+	private final int keepDays;
+	private int batchSize = BATCH_SIZE;
+
+	/**
+	 * @param keepBuilds
+	 *            number of the newest builds to keep, -1 for none
+	 * @param keepDays
+	 *            days of builds to keep, -1 for none
+	 */
+	public BuildPruner(int keepBuilds, int keepDays) {
+		if (keepBuilds < 0 && keepDays < 0)
+			throw new IllegalArgumentException(
+					"Either builds or days to keep are required");
+		this.keepBuilds = keepBuilds;
+		this.keepDays = keepDays;
+	}
+
+	void setBatchSize(int batchSize) {
+		this.batchSize = Math.max(batchSize, 1);
+	}
+
+	public int getKeepBuilds() {
+		return keepBuilds;
+	}
+
+	public int getKeepDays() {
+		return keepDays;
+	}
+
+	/**
+	 * @return the bytes freed
+	 */
+	public long prune(Job<?, ?> job)
+			throws IOException, InterruptedException {
+		BuildMetadata metadata = BuildMetadata.read(job.getBuildDir());
+		if (metadata == null)
+			throw new IOException(
+					"Cannot read the builds of " + job.getFullName());
+
+		List<Integer> candidates = getCandidates(job, metadata);
+		long freed = 0;
+		for (int from = 0; from < candidates.size(); from += batchSize) {
+			if (Thread.interrupted())
+				throw new InterruptedException();
+			freed += deleteBatch(job, candidates.subList(from,
+					Math.min(from + batchSize, candidates.size())));
+		}
+
+		if (logger.isLoggable(Level.FINE))
+			logger.log(Level.FINE, "Pruned " + candidates.size()
+					+ " builds of " + job.getFullName() + ", freed " + freed
+					+ " bytes.");
+		return freed;
+	}
+
+	/**
+	 * @return the numbers of the builds to delete, the oldest first
+	 */
+	private List<Integer> getCandidates(Job<?, ?> job,
+			BuildMetadata metadata) {
+		List<Integer> numbers = metadata.getBuildNumbers();
+		int lastSuccessfulBuild = metadata.getLastSuccessfulBuild();
+		if (lastSuccessfulBuild == BuildMetadata.UNKNOWN) {
+			Run<?, ?> run = job.getLastSuccessfulBuild();
+			lastSuccessfulBuild = run == null ? BuildMetadata.NONE
+					: run.getNumber();
+		}
+		long deadline = System.currentTimeMillis()
+				- keepDays * Constants.DAYS_TO_64BIT_UNIXTIME;
+
+		List<Integer> candidates = new ArrayList<>();
+		// The last build is always kept.
+		for (int i = 0; i < numbers.size() - 1; i++) {
+			int number = numbers.get(i);
+			if (number == lastSuccessfulBuild)
+				continue;
+			if (keepBuilds >= 0 && numbers.size() - i <= keepBuilds)
+				continue;
+			if (keepDays >= 0) {
+				long latestStartTime = metadata.getLatestStartTime(number);
+				if (latestStartTime == -1 || latestStartTime >= deadline)
+					continue;
+			}
+			candidates.add(number);
+		}
+		return candidates;
+	}
+
+	private long deleteBatch(Job<?, ?> job, List<Integer> numbers)
+			throws IOException {
+		List<Run<?, ?>> batch = new ArrayList<>(numbers.size());
+		for (int number : numbers) {
+			Run<?, ?> run = job.getBuildByNumber(number);
+			if (run != null && !run.isKeepLog() && !run.isBuilding())
+				batch.add(run);
+		}
+
+		long freed = 0;
+		for (Run<?, ?> run : batch) {
+			long bytes = DiskUsageCache.walk(run.getRootDir().toPath(), null);
+			run.delete();
+			freed += bytes;
+		}
+		return freed;
+	}
+
+}
@@ -32,10 +32,26 @@ public class Constants {
 	public static final String ICON_FILE_ULR = "/plugin/failedJobDeactivator/icons/user-trash.png";
 	public static final String MANAGEMENTLINK_URL = "/plugin/failedJobDeactivator/";
 
+	// Results page
+	public static final int RESULT_PAGE_SIZE = 100;
+	public static final int MAX_RESULT_PAGE_SIZE = 1000;
+
+	// Job handling
+	public static final String ACTION_DISABLE = "disable";
+	public static final String ACTION_DELETE = "delete";
+	public static final String ACTION_PRUNE = "prune";
+
 	// Calculation
 	public static final long DAYS_TO_64BIT_UNIXTIME = 86400000L;
 
-	// CSV file
+	// Files below JENKINS_HOME
+	public static final String PLUGIN_DIRECTORY = "failedJobDeactivator";
+	public static final String HEALTH_INDEX_FILENAME = "jobHealthIndex.bin";
+	public static final String SCHEDULE_FILENAME = "detectionSchedule.xml";
+	public static final String SNAPSHOT_DIRECTORY = "snapshots";
+
+	// Report files
 	public static final String CSV_FILENAME = "detectedJobs.csv";
+	public static final String NDJSON_FILENAME = "detectedJobs.ndjson";
 
 }
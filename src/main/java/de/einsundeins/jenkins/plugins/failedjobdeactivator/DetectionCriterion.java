@@ -0,0 +1,113 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 Jochen A. Fuerbacher, 1&1 Telecommunication SE
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.einsundeins.jenkins.plugins.failedjobdeactivator;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import hudson.ExtensionList;
+import hudson.ExtensionPoint;
+import hudson.model.Job;
+import jenkins.model.Jenkins;
+
+/**
+ * A condition a job has to fulfil to get detected. A job is detected, if
+ * all applicable criteria accept it.
+ *
+ * <p>
+ * The {@link JobScanner} evaluates the criteria from the cheapest to the
+ * most expensive one and stops at the first one rejecting a job, so
+ * expensive criteria only see jobs the cheap ones accepted.
+ */
+public abstract class DetectionCriterion implements ExtensionPoint {
+
+	/**
+	 * Decides from the name of a job.
+	 */
+	public static final int COST_NAME = 0;
+
+	/**
+	 * Decides from a property of the job already in memory, e.g. whether
+	 * it is disabled.
+	 */
+	public static final int COST_FLAG = 10;
+
+	/**
+	 * Decides from build records, which may get loaded from disk.
+	 */
+	public static final int COST_BUILD_RECORDS = 100;
+
+	/**
+	 * Decides from files in the workspace or the build directories, e.g.
+	 * the size of the artifacts.
+	 */
+	public static final int COST_ARTIFACTS = 1000;
+
+	/**
+	 * @return the relative cost of {@link #accept}, e.g. one of the
+	 *         <code>COST_</code> constants
+	 */
+	public abstract int getCost();
+
+	/**
+	 * @return false, if the criterion is not used by the given detection
+	 */
+	public boolean isApplicable(JobScanner scanner) {
+		return true;
+	}
+
+	/**
+	 * @return false, if the job must not get detected
+	 */
+	public abstract boolean accept(Job<?, ?> job, JobScanner scanner);
+
+	public static ExtensionList<DetectionCriterion> all() {
+		return ExtensionList.lookup(DetectionCriterion.class);
+	}
+
+	/**
+	 * @return the criteria applicable to the given detection, the cheapest
+	 *         first
+	 */
+	static List<DetectionCriterion> forScanner(JobScanner scanner) {
+		List<DetectionCriterion> criteria = new ArrayList<>();
+		if (Jenkins.getInstance() == null)
+			return criteria;
+
+		for (DetectionCriterion criterion : all()) {
+			if (criterion.isApplicable(scanner))
+				criteria.add(criterion);
+		}
+		Collections.sort(criteria, new Comparator<DetectionCriterion>() {
+			@Override
+			public int compare(DetectionCriterion c1, DetectionCriterion c2) {
+				return Integer.compare(c1.getCost(), c2.getCost());
+			}
+		});
+		return criteria;
+	}
+
+}
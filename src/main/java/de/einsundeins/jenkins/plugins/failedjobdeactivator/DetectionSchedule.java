@@ -0,0 +1,296 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 Jochen A. Fuerbacher, 1&1 Telecommunication SE
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.einsundeins.jenkins.plugins.failedjobdeactivator;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import hudson.XmlFile;
+import jenkins.model.Jenkins;
+
+/**
+ * Configuration and state of the scheduled detection. A sweep over all
+ * items starts once per time window and is continued by
+ * {@link ScheduledDetection} in slices. The full name of the last checked
+ * item is kept as cursor, so a sweep survives a restart.
+ */
+public class DetectionSchedule {
+
+	private static final Logger logger = Logger
+			.getLogger(DetectionSchedule.class.getName());
+
+	public static final int DEFAULT_START_HOUR = 22;
+	public static final int DEFAULT_END_HOUR = 6;
+	public static final int DEFAULT_SLICE_SIZE = 500;
+	public static final long DEFAULT_SLICE_MILLIS = 2000;
+
+	// Configuration
+	private boolean enabled;
+	private long lastSuccessfulBuild = Constants.DEFAULT_LAST_SUCCESSFUL_BUILD;
+	private String includes = "";
+	private String excludes = "";
+	private boolean skipDisabled;
+	private boolean autoDisable;
+	private int startHour = DEFAULT_START_HOUR;
+	private int endHour = DEFAULT_END_HOUR;
+	private int sliceSize = DEFAULT_SLICE_SIZE;
+	private long sliceMillis = DEFAULT_SLICE_MILLIS;
+
+	// Running sweep, the cursor is null if there is none
+	private String cursor;
+	private long sweepStarted;
+	private int itemsVisited;
+	private List<String> detected = new ArrayList<>();
+
+	// Last completed sweep
+	private long lastSweepFinished;
+	private int lastSweepItems;
+	private List<String> lastResult = new ArrayList<>();
+
+	private transient File file;
+
+	/**
+	 * @return the schedule stored in the given file or a disabled one, if
+	 *         there is none
+	 */
+	static DetectionSchedule load(File file) {
+		DetectionSchedule schedule = null;
+		XmlFile xmlFile = new XmlFile(Jenkins.XSTREAM2, file);
+		if (xmlFile.exists()) {
+			try {
+				schedule = (DetectionSchedule) xmlFile.read();
+			} catch (IOException | ClassCastException e) {
+				logger.log(Level.WARNING,
+						"Failed to load detection schedule " + file, e);
+			}
+		}
+		if (schedule == null)
+			schedule = new DetectionSchedule();
+		schedule.file = file;
+		return schedule;
+	}
+
+	public synchronized void save() throws IOException {
+		if (file != null)
+			new XmlFile(Jenkins.XSTREAM2, file).write(this);
+	}
+
+	private Object readResolve() {
+		if (detected == null)
+			detected = new ArrayList<>();
+		if (lastResult == null)
+			lastResult = new ArrayList<>();
+		return this;
+	}
+
+	/**
+	 * Applies a new configuration. A running sweep is restarted, as its
+	 * results may not match the configuration anymore.
+	 */
+	public synchronized void configure(boolean enabled,
+			long lastSuccessfulBuild, String includes, String excludes,
+			boolean skipDisabled, boolean autoDisable, int startHour,
+			int endHour, int sliceSize, long sliceMillis) {
+		// Fail before changing anything.
+		new JobSelector(includes, excludes);
+
+		this.enabled = enabled;
+		this.lastSuccessfulBuild = lastSuccessfulBuild;
+		this.includes = includes;
+		this.excludes = excludes;
+		this.skipDisabled = skipDisabled;
+		this.autoDisable = autoDisable;
+		this.startHour = Math.min(Math.max(startHour, 0), 23);
+		this.endHour = Math.min(Math.max(endHour, 0), 23);
+		this.sliceSize = Math.max(sliceSize, 1);
+		this.sliceMillis = Math.max(sliceMillis, 1);
+		cursor = null;
+		detected.clear();
+	}
+
+	/**
+	 * @return a scanner for the configured criteria without limit
+	 */
+	synchronized JobScanner createScanner() {
+		JobScanner scanner = new JobScanner(lastSuccessfulBuild, -1, null);
+		scanner.setSelector(new JobSelector(includes, excludes));
+		scanner.setSkipDisabled(skipDisabled);
+		return scanner;
+	}
+
+	/**
+	 * @return the start of the time window the given time is in or -1, if
+	 *         it is outside of the window
+	 */
+	synchronized long getWindowStart(long time) {
+		Calendar calendar = Calendar.getInstance();
+		calendar.setTimeInMillis(time);
+		int hour = calendar.get(Calendar.HOUR_OF_DAY);
+
+		boolean inWindow;
+		if (startHour == endHour)
+			inWindow = true;
+		else if (startHour < endHour)
+			inWindow = hour >= startHour && hour < endHour;
+		else
+			inWindow = hour >= startHour || hour < endHour;
+		if (!inWindow)
+			return -1;
+
+		calendar.set(Calendar.HOUR_OF_DAY, startHour);
+		calendar.set(Calendar.MINUTE, 0);
+		calendar.set(Calendar.SECOND, 0);
+		calendar.set(Calendar.MILLISECOND, 0);
+		if (calendar.getTimeInMillis() > time)
+			calendar.add(Calendar.DAY_OF_MONTH, -1);
+		return calendar.getTimeInMillis();
+	}
+
+	/**
+	 * @return true, if a sweep is running or a new one is due at the given
+	 *         time
+	 */
+	synchronized boolean isSweepDue(long time) {
+		if (!enabled)
+			return false;
+
+		long windowStart = getWindowStart(time);
+		if (windowStart == -1)
+			return false;
+
+		return isSweepRunning() || sweepStarted < windowStart;
+	}
+
+	synchronized void startSweep(long time) {
+		cursor = "";
+		sweepStarted = time;
+		itemsVisited = 0;
+		detected.clear();
+	}
+
+	synchronized void advance(String fullName, boolean isDetected) {
+		cursor = fullName;
+		itemsVisited++;
+		if (isDetected)
+			detected.add(fullName);
+	}
+
+	/**
+	 * Publishes the result of the running sweep.
+	 */
+	synchronized void finishSweep(long time) {
+		lastResult = new ArrayList<>(detected);
+		lastSweepFinished = time;
+		lastSweepItems = itemsVisited;
+		cursor = null;
+		detected.clear();
+	}
+
+	public synchronized boolean isSweepRunning() {
+		return cursor != null;
+	}
+
+	public synchronized String getCursor() {
+		return cursor;
+	}
+
+	public synchronized boolean isEnabled() {
+		return enabled;
+	}
+
+	public synchronized long getLastSuccessfulBuild() {
+		return lastSuccessfulBuild;
+	}
+
+	public synchronized String getIncludes() {
+		return includes;
+	}
+
+	public synchronized String getExcludes() {
+		return excludes;
+	}
+
+	public synchronized boolean isSkipDisabled() {
+		return skipDisabled;
+	}
+
+	public synchronized boolean isAutoDisable() {
+		return autoDisable;
+	}
+
+	public synchronized int getStartHour() {
+		return startHour;
+	}
+
+	public synchronized int getEndHour() {
+		return endHour;
+	}
+
+	public synchronized int getSliceSize() {
+		return sliceSize;
+	}
+
+	public synchronized long getSliceMillis() {
+		return sliceMillis;
+	}
+
+	public synchronized int getItemsVisited() {
+		return itemsVisited;
+	}
+
+	public synchronized int getJobsMatched() {
+		return detected.size();
+	}
+
+	public synchronized long getLastSweepFinished() {
+		return lastSweepFinished;
+	}
+
+	/**
+	 * @return the end of the last completed sweep or null, if there is none
+	 */
+	public synchronized Date getLastSweepFinishedDate() {
+		return lastSweepFinished == 0 ? null : new Date(lastSweepFinished);
+	}
+
+	public synchronized int getLastSweepItems() {
+		return lastSweepItems;
+	}
+
+	/**
+	 * @return the full names of the jobs detected by the last completed
+	 *         sweep
+	 */
+	public synchronized List<String> getLastResult() {
+		return Collections.unmodifiableList(new ArrayList<>(lastResult));
+	}
+
+}
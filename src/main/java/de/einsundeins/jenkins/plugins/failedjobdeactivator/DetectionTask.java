@@ -0,0 +1,403 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 Jochen A. Fuerbacher, 1&1 Telecommunication SE
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.einsundeins.jenkins.plugins.failedjobdeactivator;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.acegisecurity.Authentication;
+import org.acegisecurity.context.SecurityContext;
+import org.acegisecurity.context.SecurityContextHolder;
+
+import hudson.model.Job;
+import hudson.security.ACL;
+import jenkins.model.Jenkins;
+import net.sf.json.JSONObject;
+
+/**
+ * Runs a {@link JobScanner} in the background and reports its progress.
+ */
+public class DetectionTask implements Runnable {
+
+	private Logger logger = Logger.getLogger(DetectionTask.class.getName());
+
+	public enum State {
+		QUEUED, RUNNING, ENRICHING, MEASURING, FINISHED, CANCELLED, FAILED
+	}
+
+	private final JobScanner scanner;
+	private final int expectedItems;
+
+	private volatile State state = State.QUEUED;
+	private volatile long startTime;
+	private volatile long endTime;
+	private final ResultTable resultTable;
+	private final boolean restored;
+	private volatile ScanSnapshots snapshots;
+	private volatile EnrichmentStage enrichmentStage;
+	private volatile DiskUsageStage diskUsageStage;
+	private volatile String id;
+	private volatile DirtyJobs dirtyJobs;
+	private volatile DetectionTask previous;
+	// Sequence number of the dirty jobs when the detection started
+	private volatile long dirtySequence = -1;
+	private boolean checkUsers;
+	private boolean checkFailureCauses;
+	private boolean measureDiskUsage;
+	private final Authentication authentication;
+
+	/**
+	 * @param scanner
+	 *            the scanner to run
+	 * @param expectedItems
+	 *            estimated number of items to visit, e.g. from the previous
+	 *            detection, or -1 if unknown
+	 */
+	public DetectionTask(JobScanner scanner, int expectedItems) {
+		this.scanner = scanner;
+		this.expectedItems = expectedItems;
+		this.restored = false;
+		this.resultTable = null;
+		// Detect with the permissions of the user who requested it.
+		this.authentication = Jenkins.getAuthentication();
+	}
+
+	/**
+	 * Restores a finished detection, e.g. from a snapshot.
+	 *
+	 * @param finished
+	 *            the time the detection has finished
+	 */
+	DetectionTask(ResultTable resultTable, long finished) {
+		this.scanner = new JobScanner(0, -1, null);
+		this.expectedItems = -1;
+		this.restored = true;
+		this.resultTable = resultTable;
+		this.authentication = Jenkins.getAuthentication();
+		this.state = State.FINISHED;
+		this.startTime = finished;
+		this.endTime = finished;
+	}
+
+	/**
+	 * Sets the store the result is written to when the detection has
+	 * finished.
+	 */
+	public void setSnapshots(ScanSnapshots snapshots) {
+		this.snapshots = snapshots;
+	}
+
+	/**
+	 * @return true, if the detection has been restored instead of run
+	 */
+	public boolean isRestored() {
+		return restored;
+	}
+
+	public String getId() {
+		return id;
+	}
+
+	void setId(String id) {
+		this.id = id;
+	}
+
+	/**
+	 * Selects the columns shown with the detected jobs.
+	 */
+	public void setColumns(boolean checkFailureCauses, boolean checkUsers) {
+		this.checkFailureCauses = checkFailureCauses;
+		this.checkUsers = checkUsers;
+	}
+
+	public boolean getCheckUsers() {
+		return checkUsers;
+	}
+
+	public boolean getCheckFailureCauses() {
+		return checkFailureCauses;
+	}
+
+	/**
+	 * Sets the stage looking up the failure causes and the last config
+	 * editors of the detected jobs after the detection.
+	 */
+	public void setEnrichmentStage(EnrichmentStage enrichmentStage) {
+		this.enrichmentStage = enrichmentStage;
+	}
+
+	public EnrichmentStage getEnrichmentStage() {
+		return enrichmentStage;
+	}
+
+	/**
+	 * Sets the stage measuring the disk usage of the detected jobs after
+	 * the detection.
+	 */
+	public void setDiskUsageStage(DiskUsageStage diskUsageStage) {
+		this.diskUsageStage = diskUsageStage;
+		this.measureDiskUsage = diskUsageStage != null;
+	}
+
+	/**
+	 * Selects whether the disk usage is shown, e.g. when it has been
+	 * restored.
+	 */
+	void setMeasureDiskUsage(boolean measureDiskUsage) {
+		this.measureDiskUsage = measureDiskUsage;
+	}
+
+	public boolean getMeasureDiskUsage() {
+		return measureDiskUsage;
+	}
+
+	/**
+	 * Sets the record of changed items. A detection without it can't be the
+	 * base of an incremental detection.
+	 */
+	public void setDirtyJobs(DirtyJobs dirtyJobs) {
+		this.dirtyJobs = dirtyJobs;
+	}
+
+	/**
+	 * Runs the detection incrementally on top of a finished detection with
+	 * the same configuration, if possible. Otherwise all items are checked.
+	 */
+	public void setPrevious(DetectionTask previous) {
+		this.previous = previous;
+	}
+
+	/**
+	 * @return true, if only the items changed since the previous detection
+	 *         have been checked
+	 */
+	public boolean isIncremental() {
+		return scanner.isIncremental();
+	}
+
+	@Override
+	public void run() {
+		if (state != State.QUEUED)
+			return;
+
+		state = State.RUNNING;
+		startTime = System.currentTimeMillis();
+
+		SecurityContext oldContext = ACL.impersonate(authentication);
+		try {
+			DirtyJobs changes = dirtyJobs;
+			long sequence = changes == null ? -1 : changes.getSequence();
+			if (!startIncrementalDetection(changes))
+				scanner.startDetection();
+			previous = null;
+			dirtySequence = sequence;
+			if (scanner.isCancelled()) {
+				state = State.CANCELLED;
+				return;
+			}
+
+			ScanStatistics statistics = scanner.getStatistics();
+			EnrichmentStage stage = enrichmentStage;
+			List<Job<?, ?>> detectedJobs = scanner.getDetectedJobs();
+			if (stage != null && detectedJobs != null) {
+				state = State.ENRICHING;
+				long enrichmentStart = System.nanoTime();
+				stage.run(detectedJobs);
+				statistics.addTime(ScanStatistics.Phase.ENRICHMENT,
+						System.nanoTime() - enrichmentStart);
+			}
+
+			DiskUsageStage diskUsage = diskUsageStage;
+			ResultTable table = scanner.getResult();
+			if (diskUsage != null && table != null) {
+				state = State.MEASURING;
+				long measureStart = System.nanoTime();
+				diskUsage.run(table);
+				statistics.addTime(ScanStatistics.Phase.DISK_USAGE,
+						System.nanoTime() - measureStart);
+			}
+			statistics.finish(scanner);
+			writeSnapshot();
+			state = State.FINISHED;
+
+			ScanMetrics metrics = ScanMetrics.get();
+			if (metrics != null)
+				metrics.record(statistics);
+		} catch (RuntimeException e) {
+			logger.log(Level.WARNING, "Detection failed.", e);
+			state = State.FAILED;
+		} finally {
+			endTime = System.currentTimeMillis();
+			SecurityContextHolder.setContext(oldContext);
+		}
+	}
+
+	private boolean startIncrementalDetection(DirtyJobs changes) {
+		DetectionTask base = previous;
+		if (base == null || changes == null
+				|| base.getState() != State.FINISHED)
+			return false;
+
+		Set<String> changed = changes.getChangedSince(base.dirtySequence);
+		ResultTable table = base.getResultTable();
+		if (changed == null || table == null)
+			return false;
+
+		return scanner.startIncrementalDetection(table,
+				base.getScanner().getSystemtime(), changed);
+	}
+
+	private void writeSnapshot() {
+		ScanSnapshots store = snapshots;
+		if (store == null)
+			return;
+
+		try {
+			store.write(this);
+		} catch (IOException e) {
+			logger.log(Level.WARNING, "Failed to write snapshot.", e);
+		}
+	}
+
+	/**
+	 * Cancels the detection. If it is already looking up the failure causes
+	 * and config editors or measuring the disk usage, it finishes with the
+	 * values found so far.
+	 */
+	public void cancel() {
+		scanner.cancel();
+		EnrichmentStage stage = enrichmentStage;
+		if (stage != null)
+			stage.cancel();
+		DiskUsageStage diskUsage = diskUsageStage;
+		if (diskUsage != null)
+			diskUsage.cancel();
+		if (state == State.QUEUED) {
+			state = State.CANCELLED;
+			endTime = System.currentTimeMillis();
+		}
+	}
+
+	public State getState() {
+		return state;
+	}
+
+	public boolean isDone() {
+		return state != State.QUEUED && state != State.RUNNING
+				&& state != State.ENRICHING && state != State.MEASURING;
+	}
+
+	public JobScanner getScanner() {
+		return scanner;
+	}
+
+	public int getItemsVisited() {
+		return scanner.getItemsVisited();
+	}
+
+	public int getJobsMatched() {
+		if (restored)
+			return resultTable.size();
+		return scanner.getJobsMatched();
+	}
+
+	/**
+	 * @return the time the detection has ended or 0, if it is not done
+	 */
+	public long getEndTime() {
+		return endTime;
+	}
+
+	public long getElapsedMillis() {
+		if (startTime == 0)
+			return 0;
+		if (endTime != 0)
+			return endTime - startTime;
+		return System.currentTimeMillis() - startTime;
+	}
+
+	/**
+	 * Estimates the remaining time from the items visited so far and the
+	 * expected number of items.
+	 *
+	 * @return the remaining milliseconds or -1, if no estimation is possible
+	 */
+	public long getEtaMillis() {
+		if (isDone())
+			return 0;
+		if (state == State.ENRICHING || state == State.MEASURING)
+			return -1;
+
+		int visited = getItemsVisited();
+		if (expectedItems <= 0 || visited == 0)
+			return -1;
+
+		int remaining = Math.max(expectedItems - visited, 0);
+		return getElapsedMillis() * remaining / visited;
+	}
+
+	/**
+	 * @return the detected jobs which still exist or null, if the detection
+	 *         has not finished
+	 */
+	public List<Job<?, ?>> getDetectedJobs() {
+		ResultTable table = getResultTable();
+		return table == null ? null : table.getJobs();
+	}
+
+	/**
+	 * @return the result of the detection or null, if it has not finished
+	 */
+	public ResultTable getResultTable() {
+		if (restored)
+			return resultTable;
+		return scanner.getResult();
+	}
+
+	public JSONObject getProgress() {
+		JSONObject progress = new JSONObject();
+		progress.put("state", state.name());
+		progress.put("done", isDone());
+		progress.put("itemsVisited", getItemsVisited());
+		progress.put("jobsMatched", getJobsMatched());
+		progress.put("elapsed", getElapsedMillis());
+		progress.put("eta", getEtaMillis());
+		progress.put("incremental", isIncremental());
+		EnrichmentStage stage = enrichmentStage;
+		if (stage != null) {
+			progress.put("enriched", stage.getCompleted());
+			progress.put("enrichmentTotal", stage.getTotal());
+		}
+		DiskUsageStage diskUsage = diskUsageStage;
+		if (diskUsage != null) {
+			progress.put("measured", diskUsage.getCompleted());
+			progress.put("measureTotal", diskUsage.getTotal());
+		}
+		return progress;
+	}
+
+}
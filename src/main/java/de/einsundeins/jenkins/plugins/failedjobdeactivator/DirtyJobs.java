@@ -0,0 +1,122 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 Jochen A. Fuerbacher, 1&1 Telecommunication SE
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.einsundeins.jenkins.plugins.failedjobdeactivator;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import jenkins.model.Jenkins;
+
+/**
+ * Records which items changed in a way that can change the outcome of a
+ * detection, e.g. a build completed or the item got renamed, so a
+ * detection can check only those items again.
+ *
+ * <p>
+ * Every change gets the next sequence number. A detection remembers the
+ * sequence number at its start and later asks for the items changed since.
+ * When more than {@link #MAXIMUM_SIZE} items have changed, the record is
+ * cleared and older detections have to check every item again.
+ */
+public class DirtyJobs {
+
+	static final int MAXIMUM_SIZE = Integer
+			.getInteger(DirtyJobs.class.getName() + ".maximumSize", 10000);
+
+	private final int maximumSize;
+
+	// Sequence number of the latest change of each item by full name
+	private final Map<String, Long> changes = new HashMap<>();
+	private long sequence;
+	// Changes before this sequence number are not recorded anymore
+	private long floor;
+
+	public DirtyJobs() {
+		this(MAXIMUM_SIZE);
+	}
+
+	DirtyJobs(int maximumSize) {
+		this.maximumSize = Math.max(maximumSize, 1);
+	}
+
+	/**
+	 * @return the dirty jobs of the running plugin or null
+	 */
+	public static DirtyJobs get() {
+		Jenkins jenkins = Jenkins.getInstance();
+		if (jenkins == null)
+			return null;
+
+		FailedJobDeactivatorModel plugin = jenkins
+				.getPlugin(FailedJobDeactivatorModel.class);
+		if (plugin == null)
+			return null;
+
+		return plugin.getDirtyJobs();
+	}
+
+	/**
+	 * Marks an item as changed. For an item group, this includes all items
+	 * below it.
+	 */
+	public synchronized void mark(String fullName) {
+		if (changes.size() >= maximumSize && !changes.containsKey(fullName)) {
+			changes.clear();
+			floor = sequence + 1;
+		}
+		changes.put(fullName, ++sequence);
+	}
+
+	/**
+	 * @return the sequence number of the latest change
+	 */
+	public synchronized long getSequence() {
+		return sequence;
+	}
+
+	/**
+	 * @param since
+	 *            the sequence number taken before the previous detection
+	 * @return the full names of the items changed after the given sequence
+	 *         number or null, if they are not known anymore
+	 */
+	public synchronized Set<String> getChangedSince(long since) {
+		if (since < 0 || since + 1 < floor)
+			return null;
+
+		Set<String> changed = new HashSet<>();
+		for (Map.Entry<String, Long> entry : changes.entrySet()) {
+			if (entry.getValue() > since)
+				changed.add(entry.getKey());
+		}
+		return changed;
+	}
+
+	public synchronized int size() {
+		return changes.size();
+	}
+
+}
@@ -0,0 +1,191 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 Jochen A. Fuerbacher, 1&1 Telecommunication SE
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.einsundeins.jenkins.plugins.failedjobdeactivator;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import hudson.model.Job;
+import hudson.model.Run;
+
+/**
+ * Measures the disk space a job occupies, i.e. the space its deletion
+ * would free.
+ *
+ * <p>
+ * A job is measured in parts: every build directory on its own, keyed by
+ * its path, and the rest of the job directory, keyed by its path and the
+ * next build number. Builds don't change once they are finished, so a job
+ * measured again only walks its new builds and its own files. The last
+ * completed build may still be in post-production and later builds may be
+ * running, so they are walked every time.
+ */
+public class DiskUsageCache {
+
+	static final int MAXIMUM_SIZE = Integer.getInteger(
+			DiskUsageCache.class.getName() + ".maximumSize", 100000);
+
+	static final int EXPIRY_MINUTES = Integer.getInteger(
+			DiskUsageCache.class.getName() + ".expiryMinutes", 60);
+
+	private final Cache<String, Long> cache;
+
+	public DiskUsageCache() {
+		this(MAXIMUM_SIZE, EXPIRY_MINUTES, TimeUnit.MINUTES);
+	}
+
+	DiskUsageCache(long maximumSize, long expiry, TimeUnit unit) {
+		cache = CacheBuilder.newBuilder().maximumSize(maximumSize)
+				.expireAfterWrite(expiry, unit).build();
+	}
+
+	/**
+	 * @return the bytes of all files of the job, including its builds
+	 */
+	public long getSize(Job<?, ?> job) throws IOException {
+		final Path rootDir = job.getRootDir().toPath();
+		final Path buildDir = job.getBuildDir().toPath();
+		Run<?, ?> lastCompletedBuild = job.getLastCompletedBuild();
+		int firstUnfinished = lastCompletedBuild == null ? 0
+				: lastCompletedBuild.getNumber();
+
+		long size = get(rootDir + "#" + job.getNextBuildNumber(),
+				new Callable<Long>() {
+					@Override
+					public Long call() throws IOException {
+						return walk(rootDir, buildDir);
+					}
+				});
+
+		if (!Files.isDirectory(buildDir, LinkOption.NOFOLLOW_LINKS))
+			return size;
+
+		try (DirectoryStream<Path> builds = Files
+				.newDirectoryStream(buildDir)) {
+			for (final Path build : builds) {
+				BasicFileAttributes attributes = Files.readAttributes(build,
+						BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+				if (!attributes.isDirectory()) {
+					// Permalinks, symlinks of legacy build IDs
+					size += attributes.size();
+					continue;
+				}
+
+				if (getNumber(build) >= firstUnfinished) {
+					size += walk(build, null);
+					continue;
+				}
+				size += get(build.toString(), new Callable<Long>() {
+					@Override
+					public Long call() throws IOException {
+						return walk(build, null);
+					}
+				});
+			}
+		}
+		return size;
+	}
+
+	/**
+	 * @return the number of the build in the given directory or -1, if it
+	 *         isn't named by a number
+	 */
+	private static int getNumber(Path build) {
+		try {
+			return Integer.parseInt(build.getFileName().toString());
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+
+	private long get(String key, Callable<Long> loader) throws IOException {
+		try {
+			return cache.get(key, loader);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException)
+				throw (IOException) e.getCause();
+			throw new IOException(e.getCause());
+		}
+	}
+
+	/**
+	 * Sums up the sizes of the regular files below a directory, without
+	 * following symlinks.
+	 *
+	 * @param skip
+	 *            a directory to leave out or null
+	 */
+	static long walk(Path dir, final Path skip) throws IOException {
+		if (!Files.isDirectory(dir, LinkOption.NOFOLLOW_LINKS))
+			return 0;
+
+		final long[] size = new long[1];
+		Files.walkFileTree(dir, new SimpleFileVisitor<Path>() {
+			@Override
+			public FileVisitResult preVisitDirectory(Path directory,
+					BasicFileAttributes attributes) {
+				if (directory.equals(skip))
+					return FileVisitResult.SKIP_SUBTREE;
+				return FileVisitResult.CONTINUE;
+			}
+
+			@Override
+			public FileVisitResult visitFile(Path file,
+					BasicFileAttributes attributes) {
+				if (attributes.isRegularFile())
+					size[0] += attributes.size();
+				return FileVisitResult.CONTINUE;
+			}
+
+			@Override
+			public FileVisitResult visitFileFailed(Path file,
+					IOException e) {
+				// Deleted meanwhile, e.g. by a log rotation.
+				return FileVisitResult.CONTINUE;
+			}
+		});
+		return size[0];
+	}
+
+	public void clear() {
+		cache.invalidateAll();
+	}
+
+	public long size() {
+		return cache.size();
+	}
+
+}
@@ -0,0 +1,147 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 Jochen A. Fuerbacher, 1&1 Telecommunication SE
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.einsundeins.jenkins.plugins.failedjobdeactivator;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.acegisecurity.Authentication;
+import org.acegisecurity.context.SecurityContext;
+import org.acegisecurity.context.SecurityContextHolder;
+
+import hudson.model.Job;
+import hudson.security.ACL;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+import jenkins.model.Jenkins;
+
+/**
+ * Measures the disk usage of the detected jobs on a bounded thread pool
+ * and stores it in the {@link ResultTable}, so the jobs freeing the most
+ * space can be handled first.
+ */
+public class DiskUsageStage {
+
+	private static final Logger logger = Logger
+			.getLogger(DiskUsageStage.class.getName());
+
+	static final int THREADS = Integer
+			.getInteger(DiskUsageStage.class.getName() + ".threads", 4);
+
+	private final DiskUsageCache cache;
+	private int threads = THREADS;
+
+	private final AtomicInteger completed = new AtomicInteger();
+	private volatile int total;
+	private volatile boolean cancelled;
+
+	public DiskUsageStage(DiskUsageCache cache) {
+		this.cache = cache;
+	}
+
+	public void setThreads(int threads) {
+		this.threads = Math.max(threads, 1);
+	}
+
+	/**
+	 * Measures all jobs of the table and returns when each of them is
+	 * measured or the stage is cancelled. Jobs which can't be measured keep
+	 * {@link ResultTable#UNKNOWN_SIZE}. The jobs are looked up with the
+	 * permissions of the calling thread.
+	 */
+	public void run(final ResultTable table) {
+		total = table.size();
+		if (total == 0)
+			return;
+
+		final Authentication authentication = Jenkins.getAuthentication();
+		ExecutorService executor = Executors.newFixedThreadPool(threads,
+				new NamingThreadFactory(new DaemonThreadFactory(),
+						"FailedJobDeactivator disk usage"));
+		try {
+			List<Future<?>> futures = new ArrayList<>(total);
+			for (int i = 0; i < total; i++) {
+				final int row = i;
+				futures.add(executor.submit(new Runnable() {
+					@Override
+					public void run() {
+						measure(table, row, authentication);
+					}
+				}));
+			}
+
+			for (Future<?> future : futures) {
+				if (cancelled)
+					break;
+				future.get();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException e) {
+			logger.log(Level.WARNING, "Failed to measure disk usage.", e);
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	private void measure(ResultTable table, int row,
+			Authentication authentication) {
+		if (cancelled)
+			return;
+
+		SecurityContext oldContext = ACL.impersonate(authentication);
+		try {
+			Job<?, ?> job = table.getJob(row);
+			if (job != null)
+				table.setBytes(row, cache.getSize(job));
+		} catch (IOException e) {
+			logger.log(Level.FINE,
+					"Cannot measure " + table.getFullName(row), e);
+		} finally {
+			SecurityContextHolder.setContext(oldContext);
+			completed.incrementAndGet();
+		}
+	}
+
+	public void cancel() {
+		cancelled = true;
+	}
+
+	public int getTotal() {
+		return total;
+	}
+
+	public int getCompleted() {
+		return completed.get();
+	}
+
+}
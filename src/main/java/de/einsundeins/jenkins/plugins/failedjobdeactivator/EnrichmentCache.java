@@ -0,0 +1,178 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 Jochen A. Fuerbacher, 1&1 Telecommunication SE
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.einsundeins.jenkins.plugins.failedjobdeactivator;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import hudson.model.Job;
+import jenkins.model.Jenkins;
+
+/**
+ * Holds the failure causes and the last config editor of jobs, so page
+ * reloads and reports don't load builds and config histories again.
+ *
+ * <p>
+ * An entry is keyed by the full name of the job and its next build number,
+ * so it is replaced as soon as the job starts a new build. It is dropped
+ * when the configuration of the job changes, as that changes the last
+ * config editor.
+ */
+public class EnrichmentCache {
+
+	private static final Logger logger = Logger
+			.getLogger(EnrichmentCache.class.getName());
+
+	static final int MAXIMUM_SIZE = Integer.getInteger(
+			EnrichmentCache.class.getName() + ".maximumSize", 10000);
+
+	static final int EXPIRY_MINUTES = Integer.getInteger(
+			EnrichmentCache.class.getName() + ".expiryMinutes", 60);
+
+	/**
+	 * The values of one job, each looked up on first use.
+	 */
+	private static final class Entry {
+
+		private String failureCauses;
+		private boolean failureCausesLoaded;
+		private String lastUser;
+		private boolean lastUserLoaded;
+
+		synchronized String getFailureCauses(Job<?, ?> job) {
+			if (!failureCausesLoaded) {
+				failureCauses = Util.getFailureCauses(job);
+				failureCausesLoaded = true;
+			}
+			return failureCauses;
+		}
+
+		synchronized String getLastUser(Job<?, ?> job) {
+			if (!lastUserLoaded) {
+				lastUser = Util.getLastUser(job);
+				lastUserLoaded = true;
+			}
+			return lastUser;
+		}
+
+		synchronized void setFailureCauses(String failureCauses) {
+			this.failureCauses = failureCauses;
+			failureCausesLoaded = true;
+		}
+
+		synchronized void setLastUser(String lastUser) {
+			this.lastUser = lastUser;
+			lastUserLoaded = true;
+		}
+	}
+
+	private final Cache<String, Entry> cache;
+
+	public EnrichmentCache() {
+		this(MAXIMUM_SIZE, EXPIRY_MINUTES, TimeUnit.MINUTES);
+	}
+
+	EnrichmentCache(long maximumSize, long expiry, TimeUnit unit) {
+		cache = CacheBuilder.newBuilder().maximumSize(maximumSize)
+				.expireAfterWrite(expiry, unit).build();
+	}
+
+	public String getFailureCauses(Job<?, ?> job) {
+		if (job == null)
+			return null;
+		return getEntry(job).getFailureCauses(job);
+	}
+
+	public String getLastUser(Job<?, ?> job) {
+		if (job == null)
+			return null;
+		return getEntry(job).getLastUser(job);
+	}
+
+	void putFailureCauses(Job<?, ?> job, String failureCauses) {
+		getEntry(job).setFailureCauses(failureCauses);
+	}
+
+	void putLastUser(Job<?, ?> job, String lastUser) {
+		getEntry(job).setLastUser(lastUser);
+	}
+
+	/**
+	 * @return the cache of the running plugin or null
+	 */
+	public static EnrichmentCache get() {
+		Jenkins jenkins = Jenkins.getInstance();
+		if (jenkins == null)
+			return null;
+
+		FailedJobDeactivatorModel plugin = jenkins
+				.getPlugin(FailedJobDeactivatorModel.class);
+		if (plugin == null)
+			return null;
+
+		return plugin.getEnrichmentCache();
+	}
+
+	/**
+	 * Forgets the values of a job.
+	 */
+	public void invalidate(Job<?, ?> job) {
+		cache.invalidate(keyOf(job));
+	}
+
+	public void clear() {
+		cache.invalidateAll();
+	}
+
+	public long size() {
+		return cache.size();
+	}
+
+	private Entry getEntry(Job<?, ?> job) {
+		String key = keyOf(job);
+		try {
+			return cache.get(key, new Callable<Entry>() {
+				@Override
+				public Entry call() {
+					return new Entry();
+				}
+			});
+		} catch (ExecutionException e) {
+			// Creating an entry can't fail.
+			logger.log(Level.WARNING, "Failed to cache values of " + key, e);
+			return new Entry();
+		}
+	}
+
+	private static String keyOf(Job<?, ?> job) {
+		return job.getFullName() + '#' + job.getNextBuildNumber();
+	}
+
+}
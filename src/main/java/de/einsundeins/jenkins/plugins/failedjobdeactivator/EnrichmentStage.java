@@ -0,0 +1,273 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 Jochen A. Fuerbacher, 1&1 Telecommunication SE
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.einsundeins.jenkins.plugins.failedjobdeactivator;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.acegisecurity.Authentication;
+import org.acegisecurity.context.SecurityContext;
+import org.acegisecurity.context.SecurityContextHolder;
+
+import hudson.model.Job;
+import hudson.security.ACL;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+import jenkins.model.Jenkins;
+
+/**
+ * Looks up the failure causes and the last config editor of the detected
+ * jobs on a bounded thread pool and stores them in the
+ * {@link EnrichmentCache}.
+ *
+ * <p>
+ * Every lookup has its own timeout. A lookup running longer, e.g. on a
+ * corrupt config history, is cancelled and its value is reported as
+ * {@link #UNKNOWN}, so it doesn't stall the other jobs. Such values are not
+ * cached, the next detection looks them up again.
+ */
+public class EnrichmentStage {
+
+	private static final Logger logger = Logger
+			.getLogger(EnrichmentStage.class.getName());
+
+	public static final String UNKNOWN = "unknown";
+
+	static final int THREADS = Integer
+			.getInteger(EnrichmentStage.class.getName() + ".threads", 4);
+
+	static final long TIMEOUT_MILLIS = Long.getLong(
+			EnrichmentStage.class.getName() + ".timeoutMillis", 10000);
+
+	private enum Kind {
+		FAILURE_CAUSES, LAST_USER
+	}
+
+	private static final class Lookup implements Callable<String> {
+
+		private final Job<?, ?> job;
+		private final Kind kind;
+		private final Authentication authentication;
+		private volatile long startTime;
+
+		Lookup(Job<?, ?> job, Kind kind, Authentication authentication) {
+			this.job = job;
+			this.kind = kind;
+			this.authentication = authentication;
+		}
+
+		String getKey() {
+			return keyOf(kind, job);
+		}
+
+		@Override
+		public String call() {
+			startTime = System.currentTimeMillis();
+			SecurityContext oldContext = ACL.impersonate(authentication);
+			try {
+				return kind == Kind.FAILURE_CAUSES
+						? Util.getFailureCauses(job)
+						: Util.getLastUser(job);
+			} finally {
+				SecurityContextHolder.setContext(oldContext);
+			}
+		}
+	}
+
+	private static String keyOf(Kind kind, Job<?, ?> job) {
+		return kind + "#" + job.getFullName();
+	}
+
+	private final EnrichmentCache cache;
+	private final boolean withFailureCauses;
+	private final boolean withLastUser;
+	private long timeoutMillis = TIMEOUT_MILLIS;
+	private int threads = THREADS;
+
+	// Lookups which timed out or failed. They are not cached, so the next
+	// detection looks them up again.
+	private final Set<String> failed = Collections
+			.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+	private final AtomicInteger completed = new AtomicInteger();
+	private final AtomicInteger timedOut = new AtomicInteger();
+	private volatile int total;
+	private volatile boolean cancelled;
+
+	public EnrichmentStage(EnrichmentCache cache, boolean withFailureCauses,
+			boolean withLastUser) {
+		this.cache = cache;
+		this.withFailureCauses = withFailureCauses;
+		this.withLastUser = withLastUser;
+	}
+
+	public void setTimeoutMillis(long timeoutMillis) {
+		this.timeoutMillis = timeoutMillis;
+	}
+
+	public void setThreads(int threads) {
+		this.threads = Math.max(threads, 1);
+	}
+
+	public boolean isEmpty() {
+		return !withFailureCauses && !withLastUser;
+	}
+
+	/**
+	 * Looks up the values of all jobs and returns when each of them is
+	 * known, timed out or the stage is cancelled. The values are looked up
+	 * with the permissions of the calling thread.
+	 */
+	public void run(List<Job<?, ?>> jobs) {
+		if (isEmpty() || jobs.isEmpty())
+			return;
+
+		Authentication authentication = Jenkins.getAuthentication();
+		List<Lookup> lookups = new ArrayList<>();
+		for (Job<?, ?> job : jobs) {
+			if (withFailureCauses)
+				lookups.add(new Lookup(job, Kind.FAILURE_CAUSES,
+						authentication));
+			if (withLastUser)
+				lookups.add(
+						new Lookup(job, Kind.LAST_USER, authentication));
+		}
+		total = lookups.size();
+
+		ExecutorService executor = Executors.newFixedThreadPool(threads,
+				new NamingThreadFactory(new DaemonThreadFactory(),
+						"FailedJobDeactivator enrichment"));
+		try {
+			List<Future<String>> futures = new ArrayList<>(lookups.size());
+			for (Lookup lookup : lookups)
+				futures.add(executor.submit(lookup));
+
+			for (int i = 0; i < lookups.size() && !cancelled; i++) {
+				Lookup lookup = lookups.get(i);
+				String value = await(lookup, futures.get(i));
+				completed.incrementAndGet();
+				if (value == null && failed.contains(lookup.getKey()))
+					continue;
+
+				if (lookup.kind == Kind.FAILURE_CAUSES)
+					cache.putFailureCauses(lookup.job, value);
+				else
+					cache.putLastUser(lookup.job, value);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} finally {
+			// Lookups stuck in I/O may ignore the interrupt, but the pool's
+			// threads are daemons and don't block a shutdown.
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Waits for a lookup at most the timeout after it started. If it didn't
+	 * start yet, because all threads are busy with stuck lookups, it is
+	 * given up a timeout after the wait began.
+	 *
+	 * @return the value or null, if the lookup timed out or failed
+	 */
+	private String await(Lookup lookup, Future<String> future)
+			throws InterruptedException {
+		long waitStart = System.currentTimeMillis();
+		while (true) {
+			long deadline = Math.max(waitStart, lookup.startTime)
+					+ timeoutMillis;
+			long remaining = deadline - System.currentTimeMillis();
+			if (remaining <= 0) {
+				future.cancel(true);
+				timedOut.incrementAndGet();
+				logger.log(Level.FINE, "Lookup of {0} for {1} timed out.",
+						new Object[] { lookup.kind, lookup.job.getFullName() });
+				failed.add(lookup.getKey());
+				return null;
+			}
+
+			try {
+				return future.get(remaining, TimeUnit.MILLISECONDS);
+			} catch (TimeoutException e) {
+				// The lookup may have started meanwhile, check again.
+			} catch (ExecutionException | CancellationException e) {
+				logger.log(Level.FINE, "Lookup of " + lookup.kind + " for "
+						+ lookup.job.getFullName() + " failed.", e);
+				failed.add(lookup.getKey());
+				return null;
+			}
+		}
+	}
+
+	/**
+	 * @return the failure causes of the job, {@link #UNKNOWN} if their
+	 *         lookup failed in this stage
+	 */
+	public String getFailureCauses(Job<?, ?> job) {
+		if (job != null && failed.contains(keyOf(Kind.FAILURE_CAUSES, job)))
+			return UNKNOWN;
+		return cache.getFailureCauses(job);
+	}
+
+	/**
+	 * @return the last user of the job, {@link #UNKNOWN} if the lookup
+	 *         failed in this stage
+	 */
+	public String getLastUser(Job<?, ?> job) {
+		if (job != null && failed.contains(keyOf(Kind.LAST_USER, job)))
+			return UNKNOWN;
+		return cache.getLastUser(job);
+	}
+
+		public void cancel() {
+		cancelled = true;
+	}
+
+	public int getTotal() {
+		return total;
+	}
+
+	public int getCompleted() {
+		return completed.get();
+	}
+
+	public int getTimedOut() {
+		return timedOut.get();
+	}
+
+}
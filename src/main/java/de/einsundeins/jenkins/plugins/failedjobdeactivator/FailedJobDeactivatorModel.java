@@ -23,10 +23,18 @@
  */
 package de.einsundeins.jenkins.plugins.failedjobdeactivator;
 
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.IOException;
-import java.net.MalformedURLException;
-import java.util.List;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -34,9 +42,15 @@ import javax.servlet.ServletException;
 
 import org.kohsuke.stapler.StaplerRequest;
 import org.kohsuke.stapler.StaplerResponse;
+import org.kohsuke.stapler.interceptor.RequirePOST;
 
 import hudson.Plugin;
+import hudson.model.Failure;
 import hudson.model.Job;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+import jenkins.model.Jenkins;
+import net.sf.json.JSONArray;
 import net.sf.json.JSONException;
 import net.sf.json.JSONObject;
 
@@ -45,52 +59,375 @@ public class FailedJobDeactivatorModel extends Plugin {
 	private Logger logger = Logger
 			.getLogger(FailedJobDeactivatorModel.class.getName());
 
-	private JobScanner scanner;
-	private boolean checkUsers;
-	private boolean checkBuildFailures;
+	private transient ExecutorService detectionExecutor;
+	private transient ScanSessions scanSessions;
+	private transient ScanSnapshots scanSnapshots;
+	private transient ExecutorService handlingExecutor;
+	private transient volatile JobHandling jobHandling;
+	private transient JobHealthIndex jobHealthIndex;
+	private transient DirtyJobs dirtyJobs;
+	private transient EnrichmentCache enrichmentCache;
+	private transient DiskUsageCache diskUsageCache;
+	private transient DetectionSchedule detectionSchedule;
+	private transient ScanMetrics scanMetrics;
+	private transient RequestLatencyFilter requestLatencyFilter;
 
-	public int getDefaultLastSuccessfulBuild() {
-		return Constants.DEFAULT_LAST_SUCCESSFUL_BUILD;
+	@Override
+	public void start() throws Exception {
+		detectionExecutor = Executors.newSingleThreadExecutor(
+				new NamingThreadFactory(new DaemonThreadFactory(),
+						"FailedJobDeactivator detection"));
+		scanSessions = new ScanSessions(detectionExecutor);
+		handlingExecutor = Executors.newSingleThreadExecutor(
+				new NamingThreadFactory(new DaemonThreadFactory(),
+						"FailedJobDeactivator handling coordinator"));
+		enrichmentCache = new EnrichmentCache();
+		diskUsageCache = new DiskUsageCache();
+		dirtyJobs = new DirtyJobs();
+		scanMetrics = new ScanMetrics();
+		scanMetrics.register();
+		requestLatencyFilter = new RequestLatencyFilter();
+
+		Jenkins jenkins = Jenkins.getInstance();
+		if (jenkins != null) {
+			File directory = new File(jenkins.getRootDir(),
+					Constants.PLUGIN_DIRECTORY);
+			jobHealthIndex = new JobHealthIndex(
+					new File(directory, Constants.HEALTH_INDEX_FILENAME));
+			jobHealthIndex.load();
+			scanSnapshots = new ScanSnapshots(
+					new File(directory, Constants.SNAPSHOT_DIRECTORY));
+			detectionSchedule = DetectionSchedule.load(
+					new File(directory, Constants.SCHEDULE_FILENAME));
+		}
+	}
+
+	@Override
+	public void stop() throws Exception {
+		scanSessions.cancelAll();
+		detectionExecutor.shutdownNow();
+
+		JobHandling handling = jobHandling;
+		if (handling != null)
+			handling.cancel();
+		handlingExecutor.shutdownNow();
+
+		if (jobHealthIndex != null)
+			jobHealthIndex.save();
+
+		scanMetrics.unregister();
+	}
+
+	public JobHealthIndex getJobHealthIndex() {
+		return jobHealthIndex;
+	}
+
+	public EnrichmentCache getEnrichmentCache() {
+		return enrichmentCache;
 	}
 
-	public boolean getCheckUsers() {
-		return checkUsers;
+	public DirtyJobs getDirtyJobs() {
+		return dirtyJobs;
 	}
 
-	public boolean getCheckFailureCauses() {
-		return checkBuildFailures;
+	public ScanMetrics getScanMetrics() {
+		return scanMetrics;
+	}
+
+	public DetectionSchedule getDetectionSchedule() {
+		return detectionSchedule;
+	}
+
+	public int getDefaultLastSuccessfulBuild() {
+		return Constants.DEFAULT_LAST_SUCCESSFUL_BUILD;
+	}
+
+	/**
+	 * Detections see all jobs and handling changes them, so only
+	 * administrators may use the plugin.
+	 */
+	private static void checkAdminister() {
+		Jenkins jenkins = Jenkins.getInstance();
+		if (jenkins == null)
+			throw new Failure("Jenkins is not ready");
+		jenkins.checkPermission(Jenkins.ADMINISTER);
 	}
 
 	public void doStartDetection(StaplerRequest req, StaplerResponse rsp)
 			throws IOException {
+		checkAdminister();
 
-		rsp.sendRedirect("showDetectedJobs");
-
+		DetectionTask task = null;
 		try {
 			JSONObject submittedForm = req.getSubmittedForm();
+			boolean checkUsers = submittedForm.optBoolean("checkUsers")
+					&& isJobConfigHistoryAvailable();
+			boolean checkBuildFailures = submittedForm
+					.optBoolean("checkBuildFailures")
+					&& isBuildFailureAnalyzerAvailable();
+			long lastSuccessfulBuild = submittedForm
+					.getLong("lastSuccessfulBuild");
+			int limit = submittedForm.getInt("limit");
+			String includes = submittedForm.optString("includes");
+			String excludes = submittedForm.optString("excludes");
+			boolean skipDisabled = submittedForm.optBoolean("skipDisabled");
+			boolean measureDiskUsage = submittedForm
+					.optBoolean("measureDiskUsage");
+
+			JobScanner scanner = new JobScanner(lastSuccessfulBuild, limit,
+					null);
 			try {
-				checkUsers = submittedForm.getBoolean("checkUsers");
-			} catch (Exception e) {
-				checkUsers = false;
-			}
-			try {
-				checkBuildFailures = submittedForm
-						.getBoolean("checkBuildFailures");
-			} catch (Exception e) {
-				checkBuildFailures = false;
+				scanner.setSelector(new JobSelector(includes, excludes));
+			} catch (IllegalArgumentException e) {
+				throw new Failure(e.getMessage());
 			}
-			scanner = new JobScanner(
-					submittedForm.getLong("lastSuccessfulBuild"),
-					submittedForm.getInt("limit"),
-					submittedForm.getString("regex"));
-			scanner.startDetection();
+			scanner.setParallel(submittedForm.optBoolean("parallelScan"));
+			scanner.setSkipDisabled(skipDisabled);
+
+			// Everything but the parallel scan changes the result.
+			String key = JSONArray.fromObject(new Object[] {
+					lastSuccessfulBuild, limit, includes, excludes,
+					skipDisabled, checkBuildFailures, checkUsers,
+					measureDiskUsage }).toString();
+			task = startDetectionTask(key, scanner, checkBuildFailures,
+					checkUsers, measureDiskUsage,
+					submittedForm.optBoolean("rescan"),
+					submittedForm.optBoolean("fullRescan"));
 		} catch (JSONException | ServletException e) {
 			logger.log(Level.WARNING, "Failed to get submitted form! " + e);
 		}
+
+		if (task == null)
+			rsp.sendRedirect(".");
+		else
+			rsp.sendRedirect("showDetectedJobs?session=" + task.getId());
+	}
+
+	/**
+	 * Joins the detection with the same parameters or starts a new one in
+	 * the background. A rescan only checks the items changed since the
+	 * detection it replaces, unless a full rescan is requested.
+	 */
+	private DetectionTask startDetectionTask(String key, JobScanner scanner,
+			boolean checkBuildFailures, boolean checkUsers,
+			boolean measureDiskUsage, boolean rescan, boolean fullRescan) {
+		DetectionTask task = new DetectionTask(scanner,
+				scanSessions.getExpectedItems());
+		task.setColumns(checkBuildFailures, checkUsers);
+		task.setSnapshots(scanSnapshots);
+		task.setDirtyJobs(dirtyJobs);
+		if (rescan && !fullRescan)
+			task.setPrevious(scanSessions.getFinished(key));
+		EnrichmentStage stage = new EnrichmentStage(enrichmentCache,
+				checkBuildFailures, checkUsers);
+		if (!stage.isEmpty())
+			task.setEnrichmentStage(stage);
+		if (measureDiskUsage)
+			task.setDiskUsageStage(new DiskUsageStage(diskUsageCache));
+
+		DetectionTask started = scanSessions.start(key, task, rescan);
+		if (started == null)
+			throw new Failure("Too many detections are running, "
+					+ "please try again later.");
+		return started;
+	}
+
+	@RequirePOST
+	public void doConfigureSchedule(StaplerRequest req, StaplerResponse rsp)
+			throws IOException, ServletException {
+		Jenkins jenkins = Jenkins.getInstance();
+		if (jenkins == null || detectionSchedule == null)
+			throw new Failure("Jenkins is not ready");
+		jenkins.checkPermission(Jenkins.ADMINISTER);
+
+		JSONObject form = req.getSubmittedForm();
+		try {
+			detectionSchedule.configure(form.optBoolean("scheduleEnabled"),
+					form.getLong("scheduleLastSuccessfulBuild"),
+					form.optString("scheduleIncludes"),
+					form.optString("scheduleExcludes"),
+					form.optBoolean("scheduleSkipDisabled"),
+					form.optBoolean("scheduleAutoDisable"),
+					form.getInt("scheduleStartHour"),
+					form.getInt("scheduleEndHour"),
+					form.getInt("scheduleSliceSize"),
+					form.getLong("scheduleSliceMillis"));
+		} catch (JSONException | IllegalArgumentException e) {
+			throw new Failure(e.getMessage());
+		}
+		detectionSchedule.save();
+
+		rsp.sendRedirect(".");
+	}
+
+	@RequirePOST
+	public void doCancelDetection(StaplerRequest req, StaplerResponse rsp)
+			throws IOException {
+		checkAdminister();
+		DetectionTask task = getDetectionTask(req.getParameter("session"));
+		if (task != null)
+			task.cancel();
+		rsp.sendRedirect(".");
+	}
+
+	public void doProgress(StaplerRequest req, StaplerResponse rsp)
+			throws IOException {
+		checkAdminister();
+		DetectionTask task = getDetectionTask(req.getParameter("session"));
+		JSONObject progress = task == null ? new JSONObject()
+				: task.getProgress();
+		rsp.setContentType("application/json;charset=UTF-8");
+		rsp.getWriter().print(progress.toString());
+	}
+
+	/**
+	 * Looks up a detection. If the session has expired or the controller has
+	 * restarted since, the detection is restored from its snapshot.
+	 *
+	 * @param session
+	 *            the session id, {@link ScanSnapshots#LATEST} for the latest
+	 *            snapshot
+	 * @return the detection or null, if there is neither a session nor a
+	 *         snapshot
+	 */
+	public DetectionTask getDetectionTask(String session) {
+		DetectionTask task = scanSessions.get(session);
+		if (task != null || session == null || scanSnapshots == null)
+			return task;
+
+		File snapshot = scanSnapshots.find(session);
+		if (snapshot == null)
+			return null;
+
+		String id = ScanSnapshots.getId(snapshot);
+		task = scanSessions.get(id);
+		if (task != null)
+			return task;
+
+		try {
+			task = scanSnapshots.read(snapshot);
+		} catch (IOException e) {
+			logger.log(Level.WARNING, "Failed to read snapshot " + snapshot,
+					e);
+			return null;
+		}
+		scanSessions.restore(id, task);
+		return task;
+	}
+
+	/**
+	 * @return the creation time of the latest snapshot or null, if there is
+	 *         none
+	 */
+	public Date getLatestSnapshotDate() {
+		File snapshot = scanSnapshots == null ? null
+				: scanSnapshots.find(ScanSnapshots.LATEST);
+		return snapshot == null ? null
+				: new Date(ScanSnapshots.getCreated(snapshot));
 	}
 
-	public List<Job<?, ?>> getDetectedJobs() {
-		return scanner.getDetectedJobs();
+	public ScanSessions getScanSessions() {
+		return scanSessions;
+	}
+
+	/**
+	 * @return the detected jobs prepared for the results page, which is
+	 *         empty while no detection has finished
+	 */
+	private static ResultTable getResultTable(DetectionTask task) {
+		ResultTable table = task == null ? null : task.getResultTable();
+		if (table == null)
+			return ResultTable.empty();
+		return table;
+	}
+
+	/**
+	 * Serves a page of the detected jobs, optionally filtered and sorted.
+	 */
+	public void doDetectedJobsJson(StaplerRequest req, StaplerResponse rsp)
+			throws IOException {
+		checkAdminister();
+		DetectionTask task = getDetectionTask(req.getParameter("session"));
+		ResultTable table = getResultTable(task);
+		int[] rows = table.query(req.getParameter("filter"),
+				req.getParameter("sort"),
+				"desc".equals(req.getParameter("order")));
+
+		int start = Math.max(parseInt(req.getParameter("start"), 0), 0);
+		int count = Math.min(Math.max(parseInt(req.getParameter("count"),
+				Constants.RESULT_PAGE_SIZE), 1), Constants.MAX_RESULT_PAGE_SIZE);
+		int end = Math.min(start + count, rows.length);
+
+		boolean withFailureCauses = task != null
+				&& task.getCheckFailureCauses();
+		boolean withLastUser = task != null && task.getCheckUsers();
+
+		JSONArray page = new JSONArray();
+		for (int i = start; i < end; i++) {
+			// Only the jobs of the requested page are looked up.
+			JSONObject json = table.getRow(rows[i]).toJson();
+			Job<?, ?> job = table.getJob(rows[i]);
+			if (job == null) {
+				json.put("url", "");
+				json.put("canDisable", false);
+			} else {
+				json.put("url", job.getUrl());
+				if (withFailureCauses)
+					json.put("failureCauses",
+							nullToEmpty(getFailureCauses(task, job)));
+				if (withLastUser)
+					json.put("lastUser",
+							nullToEmpty(getLastUser(task, job)));
+			}
+			page.add(json);
+		}
+
+		JSONObject result = new JSONObject();
+		result.put("total", table.size());
+		result.put("matching", rows.length);
+		result.put("totalBytes", table.getTotalBytes());
+		result.put("start", start);
+		result.put("rows", page);
+		rsp.setContentType("application/json;charset=UTF-8");
+		rsp.getWriter().print(result.toString());
+	}
+
+	private static int parseInt(String value, int defaultValue) {
+		try {
+			return Integer.parseInt(value);
+		} catch (NumberFormatException e) {
+			return defaultValue;
+		}
+	}
+
+	private static String nullToEmpty(String value) {
+		return value == null ? "" : value;
+	}
+
+	/**
+	 * Applies the bulk action of the results page to every detected job
+	 * matching its filter. Actions chosen for single jobs take precedence.
+	 */
+	private Map<Job<?, ?>, String> collectJobActions(StaplerRequest req,
+			JSONObject submittedForm) {
+		Map<Job<?, ?>, String> jobs = new HashMap<>();
+
+		String bulkAction = req.getParameter("bulk:action");
+		if (Constants.ACTION_DISABLE.equals(bulkAction)
+				|| Constants.ACTION_DELETE.equals(bulkAction)
+				|| Constants.ACTION_PRUNE.equals(bulkAction)) {
+			DetectionTask task = getDetectionTask(req.getParameter("session"));
+			ResultTable table = getResultTable(task);
+			for (int row : table.query(req.getParameter("bulk:filter"), null,
+					false)) {
+				Job<?, ?> job = table.getJob(row);
+				if (job != null)
+					jobs.put(job, bulkAction);
+			}
+		}
+
+		jobs.putAll(Util.convertJsonToMap(submittedForm));
+		return jobs;
 	}
 
 	public boolean isInstanceOfAbstractProject(Job<?, ?> job) {
@@ -109,33 +446,145 @@ public class FailedJobDeactivatorModel extends Plugin {
 		return Util.canPipelineJobsGetDisabled();
 	}
 
-	public String getFailureCauses(Job<?, ?> job) {
-		return Util.getFailureCauses(job);
+	/**
+	 * @return the failure causes of the job as found by the detection, if
+	 *         it has looked them up, or from the cache
+	 */
+	public String getFailureCauses(DetectionTask task, Job<?, ?> job) {
+		EnrichmentStage stage = task == null ? null
+				: task.getEnrichmentStage();
+		return stage != null ? stage.getFailureCauses(job)
+				: enrichmentCache.getFailureCauses(job);
 	}
 
-	public String getLastUser(Job<?, ?> job) {
-		return Util.getLastUser(job);
+	/**
+	 * @return the last user of the job as found by the detection, if it has
+	 *         looked it up, or from the cache
+	 */
+	public String getLastUser(DetectionTask task, Job<?, ?> job) {
+		EnrichmentStage stage = task == null ? null
+				: task.getEnrichmentStage();
+		return stage != null ? stage.getLastUser(job)
+				: enrichmentCache.getLastUser(job);
 	}
 
+	@RequirePOST
 	public void doHandleJobs(StaplerRequest req, StaplerResponse rsp)
 			throws IOException, ServletException {
+		checkAdminister();
 
-		if (req.hasParameter("generateCsv")) {
-			serveCsvFile(req, rsp);
-		} else {
-			rsp.forwardToPreviousPage(req);
-			new JobHandling().performJobHandling(
-					Util.convertJsonToMap(req.getSubmittedForm()));
+		DetectionTask task = getDetectionTask(req.getParameter("session"));
+		JSONObject submittedForm = req.getSubmittedForm();
+		int parallelism = JobHandling.DEFAULT_PARALLELISM;
+		try {
+			parallelism = Integer
+					.parseInt(req.getParameter("handlingParallelism"));
+		} catch (NumberFormatException e) {
+			// Keep the default.
 		}
+
+		JobHandling handling = new JobHandling(
+				collectJobActions(req, submittedForm), parallelism);
+		handling.setFastDelete(req.hasParameter("handlingFastDelete"));
+		try {
+			handling.setPruner(new BuildPruner(
+					parseInt(req.getParameter("pruneKeepBuilds"),
+							BuildPruner.DEFAULT_KEEP_BUILDS),
+					parseInt(req.getParameter("pruneKeepDays"), -1)));
+		} catch (IllegalArgumentException e) {
+			throw new Failure(e.getMessage());
+		}
+		handling.setExpected(getResultTable(task));
+		if (req.hasParameter("handlingThrottle"))
+			handling.setThrottle(new HandlingThrottle(requestLatencyFilter));
+		submitHandling(handling);
+		rsp.sendRedirect("showHandlingResults");
+	}
+
+	/**
+	 * Starts the given handling, unless another one is still running. Its
+	 * progress, results and cancel button would get lost otherwise.
+	 */
+	private synchronized void submitHandling(JobHandling handling) {
+		JobHandling running = jobHandling;
+		if (running != null && !running.isDone())
+			throw new Failure("Another handling is still running, please "
+					+ "wait until it is done or cancel it.");
+
+		jobHandling = handling;
+		handlingExecutor.submit(handling);
 	}
 
-	private void serveCsvFile(StaplerRequest req, StaplerResponse rsp)
-			throws MalformedURLException, ServletException, IOException {
-		File file = Util.generateCsv(getDetectedJobs());
-		rsp.setContentType("text/csv");
+	public JobHandling getJobHandling() {
+		return jobHandling;
+	}
+
+	public void doHandlingProgress(StaplerRequest req, StaplerResponse rsp)
+			throws IOException {
+		checkAdminister();
+		JobHandling handling = jobHandling;
+		int start = 0;
+		try {
+			start = Integer.parseInt(req.getParameter("start"));
+		} catch (NumberFormatException e) {
+			// Send all results.
+		}
+
+		JSONObject progress = handling == null ? new JSONObject()
+				: handling.getProgress(start);
+		rsp.setContentType("application/json;charset=UTF-8");
+		rsp.getWriter().print(progress.toString());
+	}
+
+	@RequirePOST
+	public void doCancelHandling(StaplerRequest req, StaplerResponse rsp)
+			throws IOException {
+		checkAdminister();
+		JobHandling handling = jobHandling;
+		if (handling != null)
+			handling.cancel();
+		rsp.sendRedirect("showHandlingResults");
+	}
+
+	public int getDefaultHandlingParallelism() {
+		return JobHandling.DEFAULT_PARALLELISM;
+	}
+
+	public int getDefaultPruneKeepBuilds() {
+		return BuildPruner.DEFAULT_KEEP_BUILDS;
+	}
+
+	/**
+	 * Streams the report of the detected jobs directly to the response.
+	 */
+	public void doReport(StaplerRequest req, StaplerResponse rsp)
+			throws IOException {
+		checkAdminister();
+
+		ReportWriter.Format format;
+		try {
+			format = ReportWriter.Format.valueOf(
+					nullToEmpty(req.getParameter("format"))
+							.toUpperCase(Locale.ENGLISH));
+		} catch (IllegalArgumentException e) {
+			throw new Failure("Unknown report format");
+		}
+		DetectionTask task = getDetectionTask(req.getParameter("session"));
+
+		rsp.setContentType(format.getContentType() + ";charset=UTF-8");
 		rsp.addHeader("Content-Disposition",
-				"attachment; filename=" + Constants.CSV_FILENAME);
-		rsp.serveFile(req, file.toURI().toURL());
+				"attachment; filename=" + format.getFilename());
+
+		Writer writer = new BufferedWriter(new OutputStreamWriter(
+				rsp.getOutputStream(), StandardCharsets.UTF_8));
+		boolean withFailureCauses = task != null
+				&& task.getCheckFailureCauses();
+		boolean withLastUser = task != null && task.getCheckUsers();
+		ReportWriter reportWriter = new ReportWriter(format,
+				withFailureCauses, withLastUser, enrichmentCache);
+		if (task != null)
+			reportWriter.setEnrichmentStage(task.getEnrichmentStage());
+		reportWriter.write(getResultTable(task), writer);
 	}
 
 }
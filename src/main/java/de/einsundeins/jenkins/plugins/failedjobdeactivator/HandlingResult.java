@@ -0,0 +1,101 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 Jochen A. Fuerbacher, 1&1 Telecommunication SE
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.einsundeins.jenkins.plugins.failedjobdeactivator;
+
+import net.sf.json.JSONObject;
+
+/**
+ * Outcome of handling a single job.
+ */
+public class HandlingResult {
+
+	private final String fullName;
+	private final String action;
+	private final boolean success;
+	private final String failureReason;
+	private final long elapsedMillis;
+	private final long bytesFreed;
+
+	public HandlingResult(String fullName, String action, boolean success,
+			String failureReason, long elapsedMillis) {
+		this(fullName, action, success, failureReason, elapsedMillis, -1);
+	}
+
+	/**
+	 * @param bytesFreed
+	 *            the bytes a pruning has freed, -1 if not known
+	 */
+	public HandlingResult(String fullName, String action, boolean success,
+			String failureReason, long elapsedMillis, long bytesFreed) {
+		this.fullName = fullName;
+		this.action = action;
+		this.success = success;
+		this.failureReason = failureReason;
+		this.elapsedMillis = elapsedMillis;
+		this.bytesFreed = bytesFreed;
+	}
+
+	public String getFullName() {
+		return fullName;
+	}
+
+	public String getAction() {
+		return action;
+	}
+
+	public boolean isSuccess() {
+		return success;
+	}
+
+	/**
+	 * @return the reason of a failure or null, if the job has been handled
+	 */
+	public String getFailureReason() {
+		return failureReason;
+	}
+
+	public long getElapsedMillis() {
+		return elapsedMillis;
+	}
+
+	/**
+	 * @return the bytes a pruning has freed or -1, if not known
+	 */
+	public long getBytesFreed() {
+		return bytesFreed;
+	}
+
+	public JSONObject toJson() {
+		JSONObject json = new JSONObject();
+		json.put("fullName", fullName);
+		json.put("action", action);
+		json.put("success", success);
+		json.put("failureReason",
+				failureReason == null ? "" : failureReason);
+		json.put("elapsed", elapsedMillis);
+		json.put("bytesFreed", bytesFreed);
+		return json;
+	}
+
+}
@@ -0,0 +1,292 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 Jochen A. Fuerbacher, 1&1 Telecommunication SE
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.einsundeins.jenkins.plugins.failedjobdeactivator;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryUsage;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import hudson.model.Queue;
+import net.sf.json.JSONObject;
+
+/**
+ * Spaces the jobs of a {@link JobHandling} depending on the health of the
+ * controller, as every handled job saves its config, fires listeners and
+ * takes Jenkins-wide locks.
+ *
+ * <p>
+ * The health is sampled at most once a second from the time it takes to
+ * get the queue lock, the heap usage and the latency of HTTP requests.
+ * While a signal is above its limit, the delay between two jobs doubles up
+ * to {@link #MAX_DELAY_MILLIS}. While a signal is above twice its limit,
+ * or the heap usage is halfway between its limit and full, no job is
+ * started at all. Once all signals are below their limits again,
+ * the delay halves with every sample. A limit of 0 ignores the signal.
+ */
+public class HandlingThrottle {
+
+	private static final Logger logger = Logger
+			.getLogger(HandlingThrottle.class.getName());
+
+	static final long QUEUE_LOCK_MILLIS = Long.getLong(
+			HandlingThrottle.class.getName() + ".queueLockMillis", 200);
+
+	static final int HEAP_PERCENT = Integer
+			.getInteger(HandlingThrottle.class.getName() + ".heapPercent", 85);
+
+	static final long REQUEST_MILLIS = Long.getLong(
+			HandlingThrottle.class.getName() + ".requestMillis", 1000);
+
+	static final long MAX_DELAY_MILLIS = Long.getLong(
+			HandlingThrottle.class.getName() + ".maxDelayMillis", 10000);
+
+	static final long MIN_DELAY_MILLIS = 50;
+
+	static final long SAMPLE_MILLIS = 1000;
+
+	public enum Signal {
+		QUEUE_LOCK, HEAP, REQUEST_LATENCY
+	}
+
+	/**
+	 * The signals measured at one point in time, -1 if unknown.
+	 */
+	static final class Health {
+
+		final long queueLockMillis;
+		final long heapPercent;
+		final long requestMillis;
+
+		Health(long queueLockMillis, long heapPercent, long requestMillis) {
+			this.queueLockMillis = queueLockMillis;
+			this.heapPercent = heapPercent;
+			this.requestMillis = requestMillis;
+		}
+	}
+
+	private final RequestLatencyFilter requestLatency;
+	private final long queueLockLimit;
+	private final long heapLimit;
+	private final long requestLimit;
+	private long sampleMillis = SAMPLE_MILLIS;
+
+	private long delay;
+	private boolean paused;
+	private Signal reason;
+	private long lastSample;
+	private long nextPermit;
+	private long pausedMillis;
+
+	/**
+	 * @param requestLatency
+	 *            the filter measuring the requests or null, to ignore the
+	 *            request latency
+	 */
+	public HandlingThrottle(RequestLatencyFilter requestLatency) {
+		this(requestLatency, QUEUE_LOCK_MILLIS, HEAP_PERCENT, REQUEST_MILLIS);
+	}
+
+	HandlingThrottle(RequestLatencyFilter requestLatency, long queueLockLimit,
+			long heapLimit, long requestLimit) {
+		this.requestLatency = requestLatency;
+		this.queueLockLimit = queueLockLimit;
+		this.heapLimit = heapLimit;
+		this.requestLimit = requestLimit;
+	}
+
+	/**
+	 * Starts measuring the request latency. Has to be followed by
+	 * {@link #stop()}.
+	 */
+	public void start() {
+		if (requestLatency != null)
+			requestLatency.register();
+	}
+
+	public void stop() {
+		if (requestLatency != null)
+			requestLatency.unregister();
+	}
+
+	synchronized void setSampleMillis(long sampleMillis) {
+		this.sampleMillis = sampleMillis;
+	}
+
+	/**
+	 * Waits until the next job may be handled.
+	 */
+	public void acquire() throws InterruptedException {
+		long wait;
+		synchronized (this) {
+			update();
+			while (paused) {
+				long start = System.currentTimeMillis();
+				wait(sampleMillis);
+				pausedMillis += System.currentTimeMillis() - start;
+				update();
+			}
+
+			long now = System.currentTimeMillis();
+			long permit = Math.max(now, nextPermit);
+			nextPermit = permit + delay;
+			wait = permit - now;
+		}
+		if (wait > 0)
+			Thread.sleep(wait);
+	}
+
+	/**
+	 * Samples the health, if the last sample is outdated, and adapts the
+	 * delay.
+	 */
+	private void update() {
+		long now = System.currentTimeMillis();
+		if (lastSample != 0 && now - lastSample < sampleMillis)
+			return;
+		lastSample = now;
+
+		Health health = sample();
+		Signal critical = exceeded(health, true);
+		Signal exceeded = critical != null ? critical
+				: exceeded(health, false);
+		boolean wasPaused = paused;
+		if (critical != null) {
+			paused = true;
+			delay = MAX_DELAY_MILLIS;
+		} else if (exceeded != null) {
+			paused = false;
+			delay = Math.min(Math.max(delay * 2, MIN_DELAY_MILLIS),
+					MAX_DELAY_MILLIS);
+		} else {
+			paused = false;
+			delay = delay / 2 < MIN_DELAY_MILLIS ? 0 : delay / 2;
+		}
+		reason = exceeded;
+
+		if (paused != wasPaused)
+			logger.log(Level.INFO, paused
+					? "Pausing job handling, " + exceeded + " is too high."
+					: "Resuming job handling.");
+		else if (logger.isLoggable(Level.FINE))
+			logger.log(Level.FINE,
+					"Delay between jobs is {0} ms, queue lock {1} ms, heap {2}%, requests {3} ms.",
+					new Object[]{delay, health.queueLockMillis,
+							health.heapPercent, health.requestMillis});
+	}
+
+	/**
+	 * @param critical
+	 *            compares the signals with the limits for pausing instead of
+	 *            slowing down
+	 * @return the signal furthest above its limit or null, if none is above
+	 */
+	private Signal exceeded(Health health, boolean critical) {
+		Signal worst = null;
+		double worstRatio = 1;
+		double ratio = ratio(health.queueLockMillis,
+				critical ? queueLockLimit * 2 : queueLockLimit);
+		if (ratio > worstRatio) {
+			worst = Signal.QUEUE_LOCK;
+			worstRatio = ratio;
+		}
+		ratio = ratio(health.heapPercent,
+				critical && heapLimit > 0 ? (heapLimit + 100) / 2 : heapLimit);
+		if (ratio > worstRatio) {
+			worst = Signal.HEAP;
+			worstRatio = ratio;
+		}
+		ratio = ratio(health.requestMillis,
+				critical ? requestLimit * 2 : requestLimit);
+		if (ratio > worstRatio)
+			worst = Signal.REQUEST_LATENCY;
+		return worst;
+	}
+
+	private static double ratio(long value, long limit) {
+		if (value < 0 || limit <= 0)
+			return 0;
+		return (double) value / limit;
+	}
+
+	/**
+	 * Measures the signals.
+	 */
+	Health sample() {
+		long start = System.nanoTime();
+		Queue.withLock(new Runnable() {
+			@Override
+			public void run() {
+				// Only measures the wait for the lock.
+			}
+		});
+		long queueLockMillis = (System.nanoTime() - start) / 1000000;
+
+		MemoryUsage heap = ManagementFactory.getMemoryMXBean()
+				.getHeapMemoryUsage();
+		long max = heap.getMax() > 0 ? heap.getMax() : heap.getCommitted();
+		long heapPercent = max > 0 ? heap.getUsed() * 100 / max : -1;
+
+		long requestMillis = requestLatency == null ? -1
+				: requestLatency.getMedianMillis(System.currentTimeMillis());
+
+		return new Health(queueLockMillis, heapPercent, requestMillis);
+	}
+
+	/**
+	 * @return the current delay between two jobs in milliseconds
+	 */
+	public synchronized long getDelayMillis() {
+		return delay;
+	}
+
+	public synchronized boolean isPaused() {
+		return paused;
+	}
+
+	/**
+	 * @return the signal above its limit or null, if the controller is
+	 *         healthy
+	 */
+	public synchronized Signal getReason() {
+		return reason;
+	}
+
+	/**
+	 * @return the total time workers have been waiting while paused
+	 */
+	public synchronized long getPausedMillis() {
+		return pausedMillis;
+	}
+
+	public synchronized JSONObject toJson() {
+		JSONObject json = new JSONObject();
+		json.put("delay", delay);
+		json.put("paused", paused);
+		json.put("reason", reason == null ? "" : reason.name());
+		json.put("pausedMillis", pausedMillis);
+		return json;
+	}
+
+}
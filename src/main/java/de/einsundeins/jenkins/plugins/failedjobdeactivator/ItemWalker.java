@@ -0,0 +1,169 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 Jochen A. Fuerbacher, 1&1 Telecommunication SE
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.einsundeins.jenkins.plugins.failedjobdeactivator;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import hudson.model.Item;
+import hudson.model.ItemGroup;
+
+/**
+ * Walks the item tree depth first. In contrast to
+ * {@link jenkins.model.Jenkins#getAllItems()} the items of an item group are
+ * only fetched when the walk reaches the group, and groups rejected by the
+ * {@link Filter} are not entered at all.
+ */
+class ItemWalker implements Iterator<Item> {
+
+	interface Filter {
+
+		/**
+		 * @return false, if none of the items in the group can be relevant
+		 */
+		boolean shouldDescend(ItemGroup<?> group);
+	}
+
+	/**
+	 * The items of one group still to be walked.
+	 */
+	private static final class Level {
+
+		final Iterator<? extends Item> items;
+		final int depth;
+		final boolean onCursorPath;
+
+		Level(Iterator<? extends Item> items, int depth,
+				boolean onCursorPath) {
+			this.items = items;
+			this.depth = depth;
+			this.onCursorPath = onCursorPath;
+		}
+	}
+
+	private static final Comparator<Item> BY_NAME = new Comparator<Item>() {
+		@Override
+		public int compare(Item item1, Item item2) {
+			return item1.getName().compareTo(item2.getName());
+		}
+	};
+
+	private final Deque<Level> stack = new ArrayDeque<>();
+	private final Filter filter;
+	private final boolean sorted;
+	private final String[] cursor;
+	private Item next;
+
+	ItemWalker(ItemGroup<?> root, Filter filter) {
+		this.filter = filter;
+		this.sorted = false;
+		this.cursor = new String[0];
+		stack.push(new Level(root.getItems().iterator(), 0, false));
+	}
+
+	/**
+	 * Walks the items of each group sorted by name, so the walk can be
+	 * resumed after any item.
+	 *
+	 * @param after
+	 *            the full name of the item to resume after or null, to start
+	 *            at the beginning
+	 */
+	ItemWalker(ItemGroup<?> root, Filter filter, String after) {
+		this.filter = filter;
+		this.sorted = true;
+		this.cursor = after == null || after.isEmpty() ? new String[0]
+				: after.split("/");
+		stack.push(children(root, 0, cursor.length > 0));
+	}
+
+	/**
+	 * On the path to the cursor, only items not before the cursor are
+	 * walked.
+	 */
+	private Level children(ItemGroup<?> group, int depth,
+			boolean onCursorPath) {
+		if (!sorted)
+			return new Level(group.getItems().iterator(), depth, false);
+
+		List<Item> items = new ArrayList<>(group.getItems());
+		Collections.sort(items, BY_NAME);
+		if (onCursorPath) {
+			Iterator<Item> iterator = items.iterator();
+			while (iterator.hasNext()) {
+				if (iterator.next().getName().compareTo(cursor[depth]) < 0)
+					iterator.remove();
+			}
+		}
+		return new Level(items.iterator(), depth, onCursorPath);
+	}
+
+	@Override
+	public boolean hasNext() {
+		while (next == null && !stack.isEmpty()) {
+			Level level = stack.peek();
+			if (!level.items.hasNext()) {
+				stack.pop();
+				continue;
+			}
+
+			Item item = level.items.next();
+			// The items on the path to the cursor have been walked before,
+			// only the items below them are left.
+			boolean walked = level.onCursorPath
+					&& item.getName().equals(cursor[level.depth]);
+			if (item instanceof ItemGroup) {
+				ItemGroup<?> group = (ItemGroup<?>) item;
+				if (filter.shouldDescend(group))
+					stack.push(children(group, level.depth + 1,
+							walked && level.depth + 1 < cursor.length));
+			}
+			if (!walked)
+				next = item;
+		}
+		return next != null;
+	}
+
+	@Override
+	public Item next() {
+		if (!hasNext())
+			throw new NoSuchElementException();
+
+		Item item = next;
+		next = null;
+		return item;
+	}
+
+	@Override
+	public void remove() {
+		throw new UnsupportedOperationException();
+	}
+
+}
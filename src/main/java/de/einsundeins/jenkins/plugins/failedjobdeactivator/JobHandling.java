@@ -24,81 +24,339 @@
 package de.einsundeins.jenkins.plugins.failedjobdeactivator;
 
 import java.io.IOException;
-import java.util.Iterator;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import org.acegisecurity.Authentication;
+import org.acegisecurity.context.SecurityContext;
+import org.acegisecurity.context.SecurityContextHolder;
+
 import hudson.model.AbstractProject;
 import hudson.model.Job;
+import hudson.model.Run;
+import hudson.security.ACL;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+import jenkins.model.Jenkins;
+import net.sf.json.JSONArray;
+import net.sf.json.JSONObject;
 
-public class JobHandling {
+/**
+ * Disables, deletes or prunes jobs on a bounded pool of worker threads and
+ * records the outcome for every job. A {@link HandlingThrottle} may slow
+ * the workers down while the controller is under pressure.
+ */
+public class JobHandling implements Runnable {
 
 	private Logger logger = Logger.getLogger(JobHandling.class.getName());
 
-	public boolean performJobHandling(Map<Job<?, ?>, String> jobs) {
+	/**
+	 * Number of jobs handled at the same time, if not given otherwise.
+	 */
+	public static final int DEFAULT_PARALLELISM = Integer
+			.getInteger(JobHandling.class.getName() + ".parallelism", 4);
+
+	static final int MAX_PARALLELISM = 32;
+
+	private final Map<Job<?, ?>, String> jobs;
+	private final int parallelism;
+	private final Authentication authentication;
+	private boolean fastDelete;
+	private BuildPruner pruner = new BuildPruner(
+			BuildPruner.DEFAULT_KEEP_BUILDS, -1);
+	private ResultTable expected;
+	private HandlingThrottle throttle;
+
+	private final List<HandlingResult> results = Collections
+			.synchronizedList(new ArrayList<HandlingResult>());
+	private final AtomicInteger failed = new AtomicInteger();
+	private volatile boolean cancelled;
+	private volatile boolean done;
+
+	/**
+	 * @param jobs
+	 *            the action for each job
+	 * @param parallelism
+	 *            maximum number of jobs handled at the same time
+	 */
+	public JobHandling(Map<Job<?, ?>, String> jobs, int parallelism) {
+		this.jobs = jobs;
+		this.parallelism = Math.max(1,
+				Math.min(parallelism, MAX_PARALLELISM));
+		// Handle the jobs with the permissions of the user who requested it.
+		this.authentication = Jenkins.getAuthentication();
+	}
+
+	/**
+	 * Enables deleting jobs by moving them to the {@link JobTrash} instead
+	 * of deleting their directories right away.
+	 */
+	public void setFastDelete(boolean fastDelete) {
+		this.fastDelete = fastDelete;
+	}
+
+	/**
+	 * Sets which builds are kept when pruning jobs.
+	 */
+	public void setPruner(BuildPruner pruner) {
+		this.pruner = pruner;
+	}
+
+	/**
+	 * Only handles jobs which are part of the given detection result and
+	 * have not been built since.
+	 */
+	public void setExpected(ResultTable expected) {
+		this.expected = expected;
+	}
+
+	/**
+	 * Sets the throttle every worker waits for before handling a job.
+	 */
+	public void setThrottle(HandlingThrottle throttle) {
+		this.throttle = throttle;
+	}
+
+	/**
+	 * @return the throttle or null, if the jobs are handled at full speed
+	 */
+	public HandlingThrottle getThrottle() {
+		return throttle;
+	}
 
+	/**
+	 * Handles all jobs and returns when they are done.
+	 */
+	@Override
+	public void run() {
+		ExecutorService executor = Executors.newFixedThreadPool(parallelism,
+				new NamingThreadFactory(new DaemonThreadFactory(),
+						"FailedJobDeactivator handling"));
+		if (throttle != null)
+			throttle.start();
 		try {
-			Iterator<Map.Entry<Job<?, ?>, String>> iter = jobs.entrySet()
-					.iterator();
+			for (final Map.Entry<Job<?, ?>, String> jobEntry : jobs
+					.entrySet()) {
+				executor.execute(new Runnable() {
+					@Override
+					public void run() {
+						try {
+							if (throttle != null && !cancelled)
+								throttle.acquire();
+						} catch (InterruptedException e) {
+							Thread.currentThread().interrupt();
+							return;
+						}
+						handle(jobEntry.getKey(), jobEntry.getValue());
+					}
+				});
+			}
+			executor.shutdown();
+			while (!executor.awaitTermination(1, TimeUnit.SECONDS)) {
+				if (cancelled)
+					executor.shutdownNow();
+			}
+		} catch (InterruptedException e) {
+			executor.shutdownNow();
+			Thread.currentThread().interrupt();
+		} finally {
+			if (throttle != null)
+				throttle.stop();
+			done = true;
+		}
+	}
 
-			while (iter.hasNext()) {
-				Map.Entry<Job<?, ?>, String> jobEntry = iter.next();
-				Job<?, ?> job = jobEntry.getKey();
-				String jobaction = jobEntry.getValue();
+	private void handle(Job<?, ?> job, String jobaction) {
+		if (cancelled)
+			return;
 
+		long start = System.currentTimeMillis();
+		String failureReason = null;
+		long bytesFreed = -1;
+
+		SecurityContext oldContext = ACL.impersonate(authentication);
+		try {
+			failureReason = validate(job);
+			if (failureReason == null) {
 				switch (jobaction) {
-					case "disable" :
+					case Constants.ACTION_DISABLE :
 						disableJob(job);
 						break;
-					case "delete" :
+					case Constants.ACTION_DELETE :
 						deleteJob(job);
 						break;
+					case Constants.ACTION_PRUNE :
+						bytesFreed = pruneJob(job);
+						break;
 					default :
+						failureReason = "Unknown action " + jobaction;
 				}
-
 			}
-
-			return true;
+		} catch (InterruptedException e) {
+			failureReason = "Interrupted";
+			Thread.currentThread().interrupt();
 		} catch (Exception e) {
-			return false;
+			logger.log(Level.WARNING,
+					"Failed to " + jobaction + " job " + job.getFullName()
+							+ ".",
+					e);
+			failureReason = e.getMessage() != null ? e.getMessage()
+					: e.getClass().getSimpleName();
+		} finally {
+			SecurityContextHolder.setContext(oldContext);
 		}
+
+		if (failureReason != null)
+			failed.incrementAndGet();
+		HandlingResult result = new HandlingResult(job.getFullName(),
+				jobaction, failureReason == null, failureReason,
+				System.currentTimeMillis() - start, bytesFreed);
+		results.add(result);
+
+		ScanMetrics metrics = ScanMetrics.get();
+		if (metrics != null)
+			metrics.record(result);
 	}
 
-	private void disableJob(Job<?, ?> job) {
+	/**
+	 * Compares the job with the detection result, which may be outdated,
+	 * e.g. when it has been restored from a snapshot.
+	 *
+	 * @return the reason not to handle the job or null
+	 */
+	private String validate(Job<?, ?> job) {
+		if (expected == null)
+			return null;
 
-		if (job == null)
-			return;
+		ResultTable.Row row = expected.getRow(job.getFullName());
+		if (row == null)
+			return "Not among the detected jobs";
+
+		Run<?, ?> lastBuild = job.getLastBuild();
+		long lastBuildTime = lastBuild == null ? -1
+				: lastBuild.getTimeInMillis();
+		if (lastBuildTime != row.getLastBuild())
+			return "Built since the detection";
+
+		return null;
+	}
+
+	private void disableJob(Job<?, ?> job) throws IOException {
 
 		logger.log(Level.INFO, "Disable job " + job + ".");
 
-		try {
-			AbstractProject<?, ?> project = (AbstractProject<?, ?>) job;
-			project.disable();
-			return;
+		if (!(job instanceof AbstractProject))
+			throw new IOException(
+					"Cannot disable " + job.getFullName() + ".");
 
-		} catch (IOException | ClassCastException e) {
-			logger.log(Level.INFO, "Cannot disable " + job.getName() + ".");
-			return;
+		((AbstractProject<?, ?>) job).disable();
+	}
+
+	private void deleteJob(Job<?, ?> job)
+			throws IOException, InterruptedException {
+
+		logger.log(Level.INFO, "Delete job " + job.getFullName() + ".");
+
+		if (fastDelete) {
+			try {
+				JobTrash.moveToTrash(job);
+				return;
+			} catch (AtomicMoveNotSupportedException e) {
+				logger.log(Level.INFO, "Cannot move " + job.getFullName()
+						+ " to the trash, deleting it directly.");
+			}
 		}
+
+		job.delete();
 	}
 
-	private void deleteJob(Job<?, ?> job) {
+	private long pruneJob(Job<?, ?> job)
+			throws IOException, InterruptedException {
 
-		if (job == null)
-			return;
+		logger.log(Level.INFO, "Prune job " + job.getFullName() + ".");
 
-		logger.log(Level.INFO, "Delete job " + job.getName() + ".");
+		return pruner.prune(job);
+	}
 
-		try {
-			job.delete();
-			return;
-		} catch (InterruptedException | IOException e) {
-			logger.log(Level.WARNING,
-					"Failed to delete job " + job.getName() + ".", e);
+	/**
+	 * Skips all jobs which are not handled yet.
+	 */
+	public void cancel() {
+		cancelled = true;
+	}
+
+	public boolean isDone() {
+		return done;
+	}
+
+	public int getParallelism() {
+		return parallelism;
+	}
+
+	public int getTotal() {
+		return jobs.size();
+	}
+
+	public int getCompleted() {
+		return results.size();
+	}
+
+	public int getFailed() {
+		return failed.get();
+	}
+
+	/**
+	 * @return the bytes freed by pruning so far
+	 */
+	public long getBytesFreed() {
+		long bytesFreed = 0;
+		synchronized (results) {
+			for (HandlingResult result : results)
+				bytesFreed += Math.max(result.getBytesFreed(), 0);
+		}
+		return bytesFreed;
+	}
+
+	/**
+	 * @return the results in the order the jobs have been handled
+	 */
+	public List<HandlingResult> getResults() {
+		synchronized (results) {
+			return new ArrayList<>(results);
 		}
+	}
 
-		return;
+	/**
+	 * @param start
+	 *            number of results the caller already knows
+	 * @return the progress and all results after the first start results
+	 */
+	public JSONObject getProgress(int start) {
+		JSONObject progress = new JSONObject();
+		progress.put("done", done);
+		progress.put("total", getTotal());
+		progress.put("failed", getFailed());
+		progress.put("bytesFreed", getBytesFreed());
+		if (throttle != null)
+			progress.put("throttle", throttle.toJson());
+
+		JSONArray newResults = new JSONArray();
+		synchronized (results) {
+			progress.put("completed", results.size());
+			for (int i = Math.max(start, 0); i < results.size(); i++)
+				newResults.add(results.get(i).toJson());
+		}
+		progress.put("results", newResults);
+		return progress;
 	}
 
 }
@@ -0,0 +1,552 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 Jochen A. Fuerbacher, 1&1 Telecommunication SE
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.einsundeins.jenkins.plugins.failedjobdeactivator;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.acegisecurity.context.SecurityContext;
+import org.acegisecurity.context.SecurityContextHolder;
+
+import hudson.Extension;
+import hudson.init.InitMilestone;
+import hudson.init.Initializer;
+import hudson.model.Item;
+import hudson.model.ItemGroup;
+import hudson.model.Job;
+import hudson.model.PeriodicWork;
+import hudson.model.Result;
+import hudson.model.Run;
+import hudson.security.ACL;
+import jenkins.model.Jenkins;
+import jenkins.util.Timer;
+
+/**
+ * Keeps the times of the first, the last successful and the last build of
+ * every job, so a detection does not need to load any build.
+ *
+ * <p>
+ * The index is updated by {@link JobHealthListener} and stored in
+ * {@link Constants#HEALTH_INDEX_FILENAME}. An entry is only used while the
+ * next build number of the job is the one recorded with it. Otherwise, e.g.
+ * after builds ran while the plugin was not active, the entry is refreshed
+ * from the build records.
+ */
+public class JobHealthIndex {
+
+	private static Logger logger = Logger
+			.getLogger(JobHealthIndex.class.getName());
+
+	private static final int MAGIC = 0x464a4449;
+	private static final int VERSION = 1;
+
+	/**
+	 * Time of a build which does not exist.
+	 */
+	public static final long NO_BUILD = -1;
+
+	/**
+	 * Times of a single job.
+	 */
+	public static final class Entry {
+
+		private final long firstBuild;
+		private final long lastSuccessfulBuild;
+		private final long lastBuild;
+
+		Entry(long firstBuild, long lastSuccessfulBuild, long lastBuild) {
+			this.firstBuild = firstBuild;
+			this.lastSuccessfulBuild = lastSuccessfulBuild;
+			this.lastBuild = lastBuild;
+		}
+
+		public long getFirstBuild() {
+			return firstBuild;
+		}
+
+		public long getLastSuccessfulBuild() {
+			return lastSuccessfulBuild;
+		}
+
+		public long getLastBuild() {
+			return lastBuild;
+		}
+
+		public boolean hasBuilds() {
+			return lastBuild != NO_BUILD;
+		}
+	}
+
+	private final File file;
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+	// Slot of each job by full name
+	private final Map<String, Integer> slots = new HashMap<>();
+	private final List<Integer> freeSlots = new ArrayList<>();
+
+	// Columns, one row per slot
+	private String[] names = new String[64];
+	private int[] nextBuildNumbers = new int[64];
+	private int[] firstBuildNumbers = new int[64];
+	private int[] lastSuccessfulBuildNumbers = new int[64];
+	private int[] lastBuildNumbers = new int[64];
+	private long[] firstBuildTimes = new long[64];
+	private long[] lastSuccessfulBuildTimes = new long[64];
+	private long[] lastBuildTimes = new long[64];
+	private int size;
+
+	private volatile boolean dirty;
+
+	JobHealthIndex(File file) {
+		this.file = file;
+	}
+
+	/**
+	 * @return the index of the running plugin or null
+	 */
+	public static JobHealthIndex get() {
+		Jenkins jenkins = Jenkins.getInstance();
+		if (jenkins == null)
+			return null;
+
+		FailedJobDeactivatorModel plugin = jenkins
+				.getPlugin(FailedJobDeactivatorModel.class);
+		if (plugin == null)
+			return null;
+
+		return plugin.getJobHealthIndex();
+	}
+
+	/**
+	 * Returns the times of a job, if they are known and up to date.
+	 */
+	public Entry get(Job<?, ?> job) {
+		lock.readLock().lock();
+		try {
+			Integer slot = slots.get(job.getFullName());
+			if (slot == null || nextBuildNumbers[slot] != job
+					.getNextBuildNumber())
+				return null;
+
+			return new Entry(firstBuildTimes[slot],
+					lastSuccessfulBuildTimes[slot], lastBuildTimes[slot]);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Number of builds {@link #refresh(Job)} requests from the job.
+	 */
+	static final int BUILDS_PER_REFRESH = 3;
+
+	/**
+	 * Reads the times of a job from its build records.
+	 */
+	public Entry refresh(Job<?, ?> job) {
+		int nextBuildNumber = job.getNextBuildNumber();
+		Run<?, ?> firstBuild = job.getFirstBuild();
+		Run<?, ?> lastSuccessfulBuild = job.getLastSuccessfulBuild();
+		Run<?, ?> lastBuild = job.getLastBuild();
+
+		lock.writeLock().lock();
+		try {
+			int slot = slotFor(job.getFullName());
+			nextBuildNumbers[slot] = nextBuildNumber;
+			setBuild(slot, firstBuild, firstBuildNumbers, firstBuildTimes);
+			setBuild(slot, lastSuccessfulBuild, lastSuccessfulBuildNumbers,
+					lastSuccessfulBuildTimes);
+			setBuild(slot, lastBuild, lastBuildNumbers, lastBuildTimes);
+			dirty = true;
+
+			return new Entry(firstBuildTimes[slot],
+					lastSuccessfulBuildTimes[slot], lastBuildTimes[slot]);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Finds the jobs whose staleness may change when the deadline moves
+	 * from one time to another, i.e. whose last successful build or, if
+	 * there is none, first build started after the first and not after the
+	 * second time. Jobs without builds are always included, as the time of
+	 * their build directory is not indexed.
+	 *
+	 * @return the full names of the jobs
+	 */
+	public List<String> getReferenceTimesBetween(long from, long to) {
+		List<String> found = new ArrayList<>();
+		lock.readLock().lock();
+		try {
+			for (Map.Entry<String, Integer> entry : slots.entrySet()) {
+				int slot = entry.getValue();
+				long time = lastSuccessfulBuildTimes[slot];
+				if (time == NO_BUILD)
+					time = firstBuildTimes[slot];
+				if (time == NO_BUILD || (time > from && time <= to))
+					found.add(entry.getKey());
+			}
+		} finally {
+			lock.readLock().unlock();
+		}
+		return found;
+	}
+
+	private static void setBuild(int slot, Run<?, ?> run, int[] numbers,
+			long[] times) {
+		numbers[slot] = run == null ? 0 : run.getNumber();
+		times[slot] = run == null ? NO_BUILD : run.getTimeInMillis();
+	}
+
+	/**
+	 * Records a completed build. If the job is not indexed yet, it gets
+	 * indexed from its build records.
+	 */
+	void onCompleted(Run<?, ?> run) {
+		Job<?, ?> job = run.getParent();
+		lock.writeLock().lock();
+		try {
+			Integer slot = slots.get(job.getFullName());
+			if (slot != null) {
+				nextBuildNumbers[slot] = job.getNextBuildNumber();
+				if (firstBuildNumbers[slot] == 0) {
+					firstBuildNumbers[slot] = run.getNumber();
+					firstBuildTimes[slot] = run.getTimeInMillis();
+				}
+				if (run.getNumber() >= lastBuildNumbers[slot]) {
+					lastBuildNumbers[slot] = run.getNumber();
+					lastBuildTimes[slot] = run.getTimeInMillis();
+				}
+				Result result = run.getResult();
+				if (result != null && result.isBetterOrEqualTo(Result.UNSTABLE)
+						&& run.getNumber() >= lastSuccessfulBuildNumbers[slot]) {
+					lastSuccessfulBuildNumbers[slot] = run.getNumber();
+					lastSuccessfulBuildTimes[slot] = run.getTimeInMillis();
+				}
+				dirty = true;
+				return;
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+
+		refresh(job);
+	}
+
+	/**
+	 * Forgets a job, if one of the builds it relies on got deleted.
+	 */
+	void onDeleted(Run<?, ?> run) {
+		lock.writeLock().lock();
+		try {
+			Integer slot = slots.get(run.getParent().getFullName());
+			if (slot == null)
+				return;
+
+			int number = run.getNumber();
+			if (number == firstBuildNumbers[slot]
+					|| number == lastSuccessfulBuildNumbers[slot]
+					|| number == lastBuildNumbers[slot])
+				free(run.getParent().getFullName());
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Moves the entries of an item and all items below it.
+	 */
+	void onLocationChanged(String oldFullName, String newFullName) {
+		lock.writeLock().lock();
+		try {
+			Map<String, Integer> moved = new HashMap<>();
+			Iterator<Map.Entry<String, Integer>> iter = slots.entrySet()
+					.iterator();
+			while (iter.hasNext()) {
+				Map.Entry<String, Integer> entry = iter.next();
+				String name = entry.getKey();
+				if (name.equals(oldFullName)) {
+					moved.put(newFullName, entry.getValue());
+					iter.remove();
+				} else if (name.startsWith(oldFullName + "/")) {
+					moved.put(newFullName
+							+ name.substring(oldFullName.length()),
+							entry.getValue());
+					iter.remove();
+				}
+			}
+			for (Map.Entry<String, Integer> entry : moved.entrySet()) {
+				slots.put(entry.getKey(), entry.getValue());
+				names[entry.getValue()] = entry.getKey();
+			}
+			if (!moved.isEmpty())
+				dirty = true;
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Removes the entries of an item and all items below it.
+	 */
+	void onDeleted(String fullName) {
+		lock.writeLock().lock();
+		try {
+			for (String name : new ArrayList<>(slots.keySet())) {
+				if (name.equals(fullName) || name.startsWith(fullName + "/"))
+					free(name);
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	public int size() {
+		lock.readLock().lock();
+		try {
+			return slots.size();
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	private int slotFor(String fullName) {
+		Integer slot = slots.get(fullName);
+		if (slot != null)
+			return slot;
+
+		if (!freeSlots.isEmpty()) {
+			slot = freeSlots.remove(freeSlots.size() - 1);
+		} else {
+			if (size == names.length)
+				grow(size * 2);
+			slot = size++;
+		}
+		slots.put(fullName, slot);
+		names[slot] = fullName;
+		return slot;
+	}
+
+	private void free(String fullName) {
+		Integer slot = slots.remove(fullName);
+		if (slot == null)
+			return;
+
+		names[slot] = null;
+		freeSlots.add(slot);
+		dirty = true;
+	}
+
+	private void grow(int capacity) {
+		names = Arrays.copyOf(names, capacity);
+		nextBuildNumbers = Arrays.copyOf(nextBuildNumbers, capacity);
+		firstBuildNumbers = Arrays.copyOf(firstBuildNumbers, capacity);
+		lastSuccessfulBuildNumbers = Arrays.copyOf(lastSuccessfulBuildNumbers,
+				capacity);
+		lastBuildNumbers = Arrays.copyOf(lastBuildNumbers, capacity);
+		firstBuildTimes = Arrays.copyOf(firstBuildTimes, capacity);
+		lastSuccessfulBuildTimes = Arrays.copyOf(lastSuccessfulBuildTimes,
+				capacity);
+		lastBuildTimes = Arrays.copyOf(lastBuildTimes, capacity);
+	}
+
+	boolean exists() {
+		return file.isFile();
+	}
+
+	/**
+	 * Loads the index from disk. A missing or unreadable file leaves the
+	 * index empty.
+	 */
+	void load() {
+		if (!file.isFile())
+			return;
+
+		lock.writeLock().lock();
+		try (InputStream in = Files.newInputStream(file.toPath());
+				DataInputStream data = new DataInputStream(
+						new BufferedInputStream(in))) {
+			if (data.readInt() != MAGIC || data.readInt() != VERSION) {
+				logger.log(Level.WARNING, "Ignoring unknown index " + file);
+				return;
+			}
+
+			int count = data.readInt();
+			for (int i = 0; i < count; i++) {
+				int slot = slotFor(data.readUTF());
+				nextBuildNumbers[slot] = data.readInt();
+				firstBuildNumbers[slot] = data.readInt();
+				lastSuccessfulBuildNumbers[slot] = data.readInt();
+				lastBuildNumbers[slot] = data.readInt();
+				firstBuildTimes[slot] = data.readLong();
+				lastSuccessfulBuildTimes[slot] = data.readLong();
+				lastBuildTimes[slot] = data.readLong();
+			}
+			dirty = false;
+		} catch (EOFException e) {
+			logger.log(Level.WARNING, "Index " + file + " is truncated.");
+		} catch (IOException e) {
+			logger.log(Level.WARNING, "Failed to load index " + file, e);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Writes the index to disk, if it has changed since it was loaded or
+	 * saved. The index is only marked as saved once the file has been
+	 * replaced, so a failed write is retried with the next save.
+	 */
+	synchronized void save() throws IOException {
+		if (!dirty)
+			return;
+
+		File parent = file.getParentFile();
+		if (!parent.isDirectory() && !parent.mkdirs())
+			throw new IOException("Cannot create " + parent);
+
+		File tmp = new File(parent, file.getName() + ".tmp");
+		// Updates wait until the file has been replaced, so none of them is
+		// lost when the dirty flag is cleared.
+		lock.readLock().lock();
+		try {
+			try (OutputStream out = Files.newOutputStream(tmp.toPath());
+					DataOutputStream data = new DataOutputStream(
+							new BufferedOutputStream(out))) {
+				data.writeInt(MAGIC);
+				data.writeInt(VERSION);
+				data.writeInt(slots.size());
+				for (int slot : slots.values()) {
+					data.writeUTF(names[slot]);
+					data.writeInt(nextBuildNumbers[slot]);
+					data.writeInt(firstBuildNumbers[slot]);
+					data.writeInt(lastSuccessfulBuildNumbers[slot]);
+					data.writeInt(lastBuildNumbers[slot]);
+					data.writeLong(firstBuildTimes[slot]);
+					data.writeLong(lastSuccessfulBuildTimes[slot]);
+					data.writeLong(lastBuildTimes[slot]);
+				}
+			}
+
+			Files.move(tmp.toPath(), file.toPath(),
+					StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+			dirty = false;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Indexes every job from its build records.
+	 */
+	void rebuild() {
+		Jenkins jenkins = Jenkins.getInstance();
+		if (jenkins == null)
+			return;
+
+		long start = System.currentTimeMillis();
+		ItemWalker walker = new ItemWalker(jenkins, new ItemWalker.Filter() {
+			@Override
+			public boolean shouldDescend(ItemGroup<?> group) {
+				return !(group instanceof Job);
+			}
+		});
+		while (walker.hasNext()) {
+			Item item = walker.next();
+			if (item instanceof Job)
+				refresh((Job<?, ?>) item);
+		}
+
+		logger.log(Level.INFO, "Indexed {0} jobs in {1} ms.", new Object[]{
+				size(), System.currentTimeMillis() - start});
+		try {
+			save();
+		} catch (IOException e) {
+			logger.log(Level.WARNING, "Failed to save index " + file, e);
+		}
+	}
+
+	/**
+	 * Builds the index in the background, if there is none on disk yet.
+	 */
+	@Initializer(after = InitMilestone.JOB_LOADED)
+	public static void rebuildIfMissing() {
+		final JobHealthIndex index = get();
+		if (index == null || index.exists())
+			return;
+
+		Timer.get().submit(new Runnable() {
+			@Override
+			public void run() {
+				SecurityContext oldContext = ACL.impersonate(ACL.SYSTEM);
+				try {
+					index.rebuild();
+				} finally {
+					SecurityContextHolder.setContext(oldContext);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Writes changes of the index to disk every few minutes.
+	 */
+	@Extension
+	public static class SaveWork extends PeriodicWork {
+
+		@Override
+		public long getRecurrencePeriod() {
+			return 5 * MIN;
+		}
+
+		@Override
+		protected void doRun() throws Exception {
+			JobHealthIndex index = get();
+			if (index != null)
+				index.save();
+		}
+	}
+
+}
@@ -0,0 +1,133 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 Jochen A. Fuerbacher, 1&1 Telecommunication SE
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.einsundeins.jenkins.plugins.failedjobdeactivator;
+
+import hudson.Extension;
+import hudson.XmlFile;
+import hudson.model.Item;
+import hudson.model.Job;
+import hudson.model.Run;
+import hudson.model.Saveable;
+import hudson.model.TaskListener;
+import hudson.model.listeners.ItemListener;
+import hudson.model.listeners.RunListener;
+import hudson.model.listeners.SaveableListener;
+
+/**
+ * Keeps the {@link JobHealthIndex} and the {@link DirtyJobs} up to date and
+ * drops cached config editors of changed jobs.
+ */
+public class JobHealthListener {
+
+	private static void markDirty(String fullName) {
+		DirtyJobs dirtyJobs = DirtyJobs.get();
+		if (dirtyJobs != null)
+			dirtyJobs.mark(fullName);
+	}
+
+	private static void configChanged(Job<?, ?> job) {
+		markDirty(job.getFullName());
+		EnrichmentCache cache = EnrichmentCache.get();
+		if (cache != null)
+			cache.invalidate(job);
+	}
+
+	@Extension
+	public static class RunListenerImpl extends RunListener<Run<?, ?>> {
+
+		@Override
+		public void onCompleted(Run<?, ?> run, TaskListener listener) {
+			JobHealthIndex index = JobHealthIndex.get();
+			if (index != null)
+				index.onCompleted(run);
+			markDirty(run.getParent().getFullName());
+		}
+
+		@Override
+		public void onDeleted(Run<?, ?> run) {
+			JobHealthIndex index = JobHealthIndex.get();
+			if (index != null)
+				index.onDeleted(run);
+			markDirty(run.getParent().getFullName());
+		}
+	}
+
+	@Extension
+	public static class ItemListenerImpl extends ItemListener {
+
+		@Override
+		public void onCreated(Item item) {
+			JobHealthIndex index = JobHealthIndex.get();
+			if (index != null && item instanceof Job)
+				index.refresh((Job<?, ?>) item);
+			markDirty(item.getFullName());
+		}
+
+		@Override
+		public void onCopied(Item src, Item item) {
+			onCreated(item);
+		}
+
+		@Override
+		public void onLocationChanged(Item item, String oldFullName,
+				String newFullName) {
+			JobHealthIndex index = JobHealthIndex.get();
+			if (index != null)
+				index.onLocationChanged(oldFullName, newFullName);
+			markDirty(oldFullName);
+			markDirty(newFullName);
+		}
+
+		@Override
+		public void onDeleted(Item item) {
+			JobHealthIndex index = JobHealthIndex.get();
+			if (index != null)
+				index.onDeleted(item.getFullName());
+			markDirty(item.getFullName());
+		}
+
+		@Override
+		public void onUpdated(Item item) {
+			if (item instanceof Job)
+				configChanged((Job<?, ?>) item);
+			else
+				markDirty(item.getFullName());
+		}
+	}
+
+	/**
+	 * Catches changes of the configuration which don't fire
+	 * {@link ItemListener#onUpdated(Item)}, e.g. disabling a job.
+	 */
+	@Extension
+	public static class SaveableListenerImpl extends SaveableListener {
+
+		@Override
+		public void onChange(Saveable o, XmlFile file) {
+			if (o instanceof Job)
+				configChanged((Job<?, ?>) o);
+		}
+	}
+
+}
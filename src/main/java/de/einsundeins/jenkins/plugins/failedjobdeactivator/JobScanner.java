@@ -23,109 +23,642 @@
  */
 package de.einsundeins.jenkins.plugins.failedjobdeactivator;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import java.util.regex.Pattern;
 
+import org.acegisecurity.Authentication;
+import org.acegisecurity.context.SecurityContext;
+import org.acegisecurity.context.SecurityContextHolder;
 import org.jenkinsci.plugins.workflow.multibranch.WorkflowMultiBranchProject;
 
 import com.github.mjdetullio.jenkins.plugins.multibranch.MavenMultiBranchProject;
 
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import hudson.Extension;
+import hudson.model.AbstractProject;
 import hudson.model.Item;
+import hudson.model.ItemGroup;
 import hudson.model.Job;
 import hudson.model.Run;
 import hudson.model.TopLevelItem;
+import hudson.security.ACL;
 import jenkins.model.Jenkins;
 
-public class JobScanner {
+public class JobScanner implements ItemWalker.Filter {
 
 	private Logger logger = Logger.getLogger(JobScanner.class.getName());
 
+	/**
+	 * Maximum number of threads used by a parallel detection.
+	 */
+	static final int PARALLELISM = Integer.getInteger(
+			JobScanner.class.getName() + ".parallelism",
+			Runtime.getRuntime().availableProcessors());
+
+	/**
+	 * Number of items a fork/join task checks itself instead of splitting.
+	 */
+	private static final int SPLIT_THRESHOLD = 16;
+
 	// Scanner configuration
 	long lastSuccessfulBuild;
 	int limit;
 	String regex;
+	JobSelector selector;
+	boolean parallel;
+	boolean useBuildMetadata = true;
+	boolean useHealthIndex = true;
+	boolean skipDisabled;
 	transient long systemtime;
-	transient boolean regexProvided;
+	transient List<DetectionCriterion> criteria;
+	transient JobHealthIndex healthIndex;
 	transient boolean isWorkflowMultibranchAvailable;
 	transient boolean isMavenMultiBranchAvailable;
 
-	List<Job<?, ?>> detectedJobs;
+	// Number of jobs which still may get detected, negative if unlimited
+	private final AtomicInteger budget = new AtomicInteger();
+
+	// Progress of a running detection
+	private final AtomicInteger itemsVisited = new AtomicInteger();
+	private final AtomicInteger jobsMatched = new AtomicInteger();
+	private final AtomicInteger buildsLoaded = new AtomicInteger();
+	private volatile boolean cancelled;
+	private volatile boolean incremental;
+	private volatile ScanStatistics statistics = new ScanStatistics();
+
+	private volatile ResultTable result;
 
 	public JobScanner(long lastSuccessfulBuild, int limit, String regex) {
 		this.lastSuccessfulBuild = lastSuccessfulBuild
 				* Constants.DAYS_TO_64BIT_UNIXTIME;
 		this.limit = limit;
 		this.regex = regex;
+		this.selector = JobSelector.forRegex(regex);
+	}
+
+	/**
+	 * Replaces the selection by the regular expression given to the
+	 * constructor.
+	 */
+	public void setSelector(JobSelector selector) {
+		this.selector = selector;
+	}
+
+	public JobSelector getSelector() {
+		return selector;
+	}
+
+	/**
+	 * Enables skipping jobs which are already disabled.
+	 */
+	public void setSkipDisabled(boolean skipDisabled) {
+		this.skipDisabled = skipDisabled;
+	}
+
+	public boolean isSkipDisabled() {
+		return skipDisabled;
+	}
+
+	/**
+	 * Enables checking the items on a fork/join pool of
+	 * {@link #PARALLELISM} threads instead of one after another.
+	 */
+	public void setParallel(boolean parallel) {
+		this.parallel = parallel;
+	}
+
+	public boolean isParallel() {
+		return parallel;
+	}
+
+	/**
+	 * Enables deciding about stale jobs from the {@link JobHealthIndex}, if
+	 * the plugin is running.
+	 */
+	public void setUseHealthIndex(boolean useHealthIndex) {
+		this.useHealthIndex = useHealthIndex;
+	}
+
+	/**
+	 * Enables deciding about stale jobs from the build directories where
+	 * possible, instead of loading build records.
+	 */
+	public void setUseBuildMetadata(boolean useBuildMetadata) {
+		this.useBuildMetadata = useBuildMetadata;
 	}
 
+	/**
+	 * Runs the detection. The result is published at once when the
+	 * detection has finished, a cancelled detection publishes nothing.
+	 */
 	public void startDetection() {
-		this.detectedJobs = new LinkedList<>();
-		systemtime = System.currentTimeMillis();
-		regexProvided = regex != null && !regex.isEmpty();
+		prepare();
+
 		Jenkins jenkins = Jenkins.getInstance();
+		if (jenkins == null)
+			return;
+
+		List<Job<?, ?>> detected;
+		if (parallel)
+			detected = scanParallel(jenkins);
+		else
+			detected = scanSequential(jenkins);
+
+		if (!cancelled)
+			result = ResultTable.of(detected, healthIndex);
+
+		statistics.finish(this);
+		logger.log(Level.FINE, "Checked {0} items, loaded {1} builds.",
+				new Object[]{itemsVisited.get(), buildsLoaded.get()});
+	}
+
+	/**
+	 * Runs the detection on top of the result of a previous one with the
+	 * same configuration. Only the changed items and the jobs whose last
+	 * successful or first build has passed the deadline since the previous
+	 * detection are checked, every other job keeps its previous outcome.
+	 *
+	 * <p>
+	 * This needs the {@link JobHealthIndex} to find the jobs passing the
+	 * deadline, and no limit, as the previous result may have been cut off.
+	 *
+	 * @param previous
+	 *            the result of the previous detection
+	 * @param previousSystemtime
+	 *            the time the previous detection computed its deadline from
+	 * @param changed
+	 *            the full names of the items changed since the previous
+	 *            detection started, see {@link DirtyJobs}
+	 * @return false, if nothing has been run, as an incremental detection
+	 *         is not possible
+	 */
+	public boolean startIncrementalDetection(ResultTable previous,
+			long previousSystemtime, Set<String> changed) {
+		prepare();
+
+		Jenkins jenkins = Jenkins.getInstance();
+		if (jenkins == null || healthIndex == null || limit >= 0)
+			return false;
+
+		incremental = true;
+		Set<String> names = new LinkedHashSet<>(changed);
+		names.addAll(healthIndex.getReferenceTimesBetween(
+				previousSystemtime - lastSuccessfulBuild,
+				systemtime - lastSuccessfulBuild));
+
+		List<Job<?, ?>> detected = new ArrayList<>();
+		Set<String> checked = new HashSet<>();
+		for (String name : names) {
+			if (cancelled)
+				break;
+
+			Item item = jenkins.getItemByFullName(name);
+			if (item != null && isReachable(item))
+				checkTree(item, detected, checked);
+		}
+		if (cancelled) {
+			statistics.finish(this);
+			return true;
+		}
+
+		// Changed items are either checked again or gone, e.g. deleted or
+		// renamed, so their previous rows are dropped.
+		ResultTable.Builder builder = new ResultTable.Builder();
+		for (int i = 0; i < previous.size(); i++) {
+			String name = previous.getFullName(i);
+			if (!checked.contains(name) && !changed.contains(name)
+					&& !isBelowChanged(name, changed))
+				builder.add(previous, i);
+		}
+		ResultTable rechecked = ResultTable.of(detected, healthIndex);
+		for (int i = 0; i < rechecked.size(); i++)
+			builder.add(rechecked, i);
+		result = builder.build();
+
+		statistics.finish(this);
+		logger.log(Level.FINE,
+				"Checked {0} of {1} changed items, kept {2} jobs.",
+				new Object[]{itemsVisited.get(), names.size(),
+						result.size() - rechecked.size()});
+		return true;
+	}
+
+	/**
+	 * @return true, if a full detection would visit the item
+	 */
+	private boolean isReachable(Item item) {
+		ItemGroup<?> parent = item.getParent();
+		while (parent instanceof Item) {
+			if (!shouldDescend(parent))
+				return false;
+			parent = ((Item) parent).getParent();
+		}
+		return true;
+	}
+
+	/**
+	 * Checks an item and, if it is an item group, all items below it.
+	 */
+	private void checkTree(Item item, List<Job<?, ?>> detected,
+			Set<String> checked) {
+		if (checked.add(item.getFullName()))
+			checkItem(item, detected);
+		if (!(item instanceof ItemGroup)
+				|| !shouldDescend((ItemGroup<?>) item))
+			return;
+
+		ItemWalker walker = new ItemWalker((ItemGroup<?>) item, this);
+		while (!cancelled && walker.hasNext()) {
+			Item child = walker.next();
+			if (checked.add(child.getFullName()))
+				checkItem(child, detected);
+		}
+	}
+
+	/**
+	 * @return true, if an item group containing the given item has changed
+	 */
+	private static boolean isBelowChanged(String fullName,
+			Set<String> changed) {
+		int slash = fullName.indexOf('/');
+		while (slash != -1) {
+			if (changed.contains(fullName.substring(0, slash)))
+				return true;
+			slash = fullName.indexOf('/', slash + 1);
+		}
+		return false;
+	}
+
+	/**
+	 * Resets the progress and takes the current time as reference for the
+	 * deadline. Items can be checked with {@link #checkItem(Item)}
+	 * afterwards, without running a whole detection.
+	 */
+	void prepare() {
+		itemsVisited.set(0);
+		jobsMatched.set(0);
+		buildsLoaded.set(0);
+		budget.set(limit);
+		incremental = false;
+		statistics = new ScanStatistics();
+		systemtime = System.currentTimeMillis();
 		isWorkflowMultibranchAvailable = Util.isWorkflowMultibranchAvailable();
 		isMavenMultiBranchAvailable = Util.isMavenMultiBranchAvailable();
+		healthIndex = useHealthIndex ? JobHealthIndex.get() : null;
+		criteria = DetectionCriterion.forScanner(this);
+	}
 
-		if (jenkins == null)
-			return;
-		for (Item item : jenkins.getAllItems()) {
-			if (limit == 0)
-				return;
-
-			if (!isCandidate(item))
-				continue;
-
-			Job<?, ?> job = (Job<?, ?>) item;
-			if (jobHasNoBuildsAndExistsTooLong(job)) {
-				detectedJobs.add(job);
-				limit--;
-				continue;
-			}
-			if (job.getBuilds().isEmpty())
-				continue;
+	private List<Job<?, ?>> scanSequential(Jenkins jenkins) {
+		List<Job<?, ?>> detected = new LinkedList<>();
+		ItemWalker walker = new ItemWalker(jenkins, this);
+		while (!cancelled && !isBudgetExhausted()) {
+			long start = System.nanoTime();
+			Item item = walker.hasNext() ? walker.next() : null;
+			statistics.addTime(ScanStatistics.Phase.WALK,
+					System.nanoTime() - start);
+			if (item == null)
+				break;
+			checkItem(item, detected);
+		}
+		return detected;
+	}
 
-			if (jobHasNoSuccessfulBuilds(job)) {
-				limit--;
-				detectedJobs.add(job);
+	private List<Job<?, ?>> scanParallel(Jenkins jenkins) {
+		ForkJoinPool pool = new ForkJoinPool(PARALLELISM);
+		try {
+			return pool.invoke(new ScanTask(
+					new ArrayList<Item>(jenkins.getItems()),
+					Jenkins.getAuthentication()));
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+
+	/**
+	 * Checks a single item and adds it to the detected jobs, if it is stale
+	 * and the limit is not reached yet.
+	 */
+	private void checkItem(Item item, List<Job<?, ?>> detected) {
+		if (checkItem(item))
+			detected.add((Job<?, ?>) item);
+	}
+
+	/**
+	 * @return true, if the item is a stale job and the limit is not reached
+	 *         yet
+	 */
+	boolean checkItem(Item item) {
+		itemsVisited.incrementAndGet();
+
+		long start = System.nanoTime();
+		boolean isCandidate = isCandidate(item);
+		statistics.addTime(ScanStatistics.Phase.FILTER,
+				System.nanoTime() - start);
+		if (!isCandidate)
+			return false;
+
+		Job<?, ?> job = (Job<?, ?>) item;
+		if (accept(job) && acquireBudget()) {
+			jobsMatched.incrementAndGet();
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Evaluates the criteria, the cheapest first, until one rejects the job.
+	 */
+	private boolean accept(Job<?, ?> job) {
+		for (DetectionCriterion criterion : criteria) {
+			long start = System.nanoTime();
+			boolean accepted = criterion.accept(job, this);
+			statistics.addTime(
+					criterion.getCost() < DetectionCriterion.COST_BUILD_RECORDS
+							? ScanStatistics.Phase.FILTER
+							: ScanStatistics.Phase.STALENESS,
+					System.nanoTime() - start);
+			if (!accepted) {
+				statistics.rejected(criterion.getClass().getSimpleName());
+				return false;
 			}
+		}
+		return true;
+	}
+
+	boolean isStale(Job<?, ?> job) {
+		if (healthIndex != null) {
+			JobHealthIndex.Entry entry = healthIndex.get(job);
+			if (entry != null)
+				return isStale(job, entry);
+		}
+
+		if (useBuildMetadata) {
+			Boolean stale = isStaleByBuildMetadata(job);
+			if (stale != null)
+				return stale;
+		}
 
+		if (healthIndex != null) {
+			// The builds have to be loaded anyway, so the index keeps their
+			// times for the next detection.
+			buildsLoaded.addAndGet(JobHealthIndex.BUILDS_PER_REFRESH);
+			return isStale(job, healthIndex.refresh(job));
 		}
+
+		if (jobHasNoBuildsAndExistsTooLong(job))
+			return true;
+
+		return jobHasNoSuccessfulBuilds(job);
 	}
 
-	private boolean isCandidate(Item item) {
-		// Only check TopLevelItems.
-		if (!(item instanceof TopLevelItem))
+	private boolean isStale(Job<?, ?> job, JobHealthIndex.Entry entry) {
+		if (!entry.hasBuilds())
+			return !isInDeadline(job.getBuildDir().lastModified());
+
+		return isStale(entry);
+	}
+
+	/**
+	 * Decides from the indexed times of a job which has builds.
+	 */
+	boolean isStale(JobHealthIndex.Entry entry) {
+		if (entry.getLastSuccessfulBuild() != JobHealthIndex.NO_BUILD)
+			return !isInDeadline(entry.getLastSuccessfulBuild());
+
+		return !isInDeadline(entry.getFirstBuild());
+	}
+
+	/**
+	 * Decides like {@link #isStale(Job)} without loading any build. A job is
+	 * never considered stale here, if it isn't stale according to the build
+	 * records.
+	 *
+	 * @return null, if the build directory is not sufficient to decide
+	 */
+	private Boolean isStaleByBuildMetadata(Job<?, ?> job) {
+		BuildMetadata metadata = BuildMetadata.read(job.getBuildDir());
+		if (metadata == null)
+			return null;
+
+		int referenceBuild = metadata.getLastSuccessfulBuild();
+		if (referenceBuild == BuildMetadata.UNKNOWN)
+			return null;
+
+		if (referenceBuild == BuildMetadata.NONE) {
+			referenceBuild = metadata.getFirstBuild();
+			if (referenceBuild == BuildMetadata.NONE)
+				return !isInDeadline(metadata.getBuildDirLastModified());
+		}
+
+		long latestStartTime = metadata.getLatestStartTime(referenceBuild);
+		if (latestStartTime == -1)
+			return null;
+
+		if (!isInDeadline(latestStartTime))
+			return true;
+
+		if (metadata.getExactStartTime(referenceBuild) != -1)
 			return false;
 
-		// Only check jobs.
-		if (!(item instanceof Job))
+		// The build may have started before the deadline.
+		return null;
+	}
+
+	/**
+	 * Takes one job from the shared budget.
+	 *
+	 * @return false, if the limit has been reached
+	 */
+	private boolean acquireBudget() {
+		while (true) {
+			int current = budget.get();
+			if (current < 0)
+				return true;
+			if (current == 0)
+				return false;
+			if (budget.compareAndSet(current, current - 1))
+				return true;
+		}
+	}
+
+	private boolean isBudgetExhausted() {
+		return budget.get() == 0;
+	}
+
+	/**
+	 * Checks a list of sibling items and descends into item groups. Large
+	 * lists are split into halves, each item group gets its own task.
+	 */
+	@SuppressFBWarnings(value = {"SE_BAD_FIELD", "SE_BAD_FIELD_INNER_CLASS",
+			"SE_INNER_CLASS"}, justification = "Never serialized")
+	private class ScanTask extends RecursiveTask<List<Job<?, ?>>> {
+
+		private static final long serialVersionUID = 1L;
+
+		private final List<Item> items;
+		private final Authentication authentication;
+
+		ScanTask(List<Item> items, Authentication authentication) {
+			this.items = items;
+			this.authentication = authentication;
+		}
+
+		@Override
+		protected List<Job<?, ?>> compute() {
+			if (items.size() > SPLIT_THRESHOLD) {
+				int middle = items.size() / 2;
+				ScanTask second = new ScanTask(
+						items.subList(middle, items.size()), authentication);
+				second.fork();
+				List<Job<?, ?>> detected = new ScanTask(
+						items.subList(0, middle), authentication).compute();
+				detected.addAll(second.join());
+				return detected;
+			}
+
+			List<Job<?, ?>> detected = new ArrayList<>();
+			List<ScanTask> children = new ArrayList<>();
+			SecurityContext oldContext = ACL.impersonate(authentication);
+			try {
+				for (Item item : items) {
+					if (cancelled || isBudgetExhausted())
+						break;
+
+					checkItem(item, detected);
+
+					if (item instanceof ItemGroup
+							&& shouldDescend((ItemGroup<?>) item)) {
+						long start = System.nanoTime();
+						Collection<? extends Item> groupItems = ((ItemGroup<?>) item)
+								.getItems();
+						statistics.addTime(ScanStatistics.Phase.WALK,
+								System.nanoTime() - start);
+						ScanTask child = new ScanTask(
+								new ArrayList<Item>(groupItems),
+								authentication);
+						child.fork();
+						children.add(child);
+					}
+				}
+			} finally {
+				SecurityContextHolder.setContext(oldContext);
+			}
+
+			for (ScanTask child : children)
+				detected.addAll(child.join());
+
+			return detected;
+		}
+	}
+
+	/**
+	 * Stops a running detection at the next visited item.
+	 */
+	public void cancel() {
+		cancelled = true;
+	}
+
+	public boolean isCancelled() {
+		return cancelled;
+	}
+
+	/**
+	 * @return true, if the last detection only checked the changed items
+	 */
+	public boolean isIncremental() {
+		return incremental;
+	}
+
+	/**
+	 * @return the time the deadline of the last detection was computed from
+	 */
+	long getSystemtime() {
+		return systemtime;
+	}
+
+	public int getItemsVisited() {
+		return itemsVisited.get();
+	}
+
+	public int getJobsMatched() {
+		return jobsMatched.get();
+	}
+
+	/**
+	 * @return the timings of the running or the last detection
+	 */
+	public ScanStatistics getStatistics() {
+		return statistics;
+	}
+
+	/**
+	 * @return the number of builds the detection has requested from the
+	 *         jobs, each of them possibly loaded from disk
+	 */
+	public int getBuildsLoaded() {
+		return buildsLoaded.get();
+	}
+
+	/**
+	 * Skips item groups whose items never get checked, so they are not even
+	 * loaded.
+	 */
+	@Override
+	public boolean shouldDescend(ItemGroup<?> group) {
+		// Jobs like matrix projects only contain items which are no
+		// TopLevelItems.
+		if (group instanceof Job)
 			return false;
 
-		// Do not check job if it is part of a Maven multi branch project.
+		// Do not check jobs which are part of a Maven multi branch project.
 		if (isMavenMultiBranchAvailable
-				&& item.getParent() instanceof MavenMultiBranchProject)
+				&& group instanceof MavenMultiBranchProject)
 			return false;
 
-		// Do not check job if it is part of a multibranch pipeline.
+		// Do not check jobs which are part of a multibranch pipeline.
 		if (isWorkflowMultibranchAvailable
-				&& item.getParent() instanceof WorkflowMultiBranchProject)
+				&& group instanceof WorkflowMultiBranchProject)
 			return false;
 
-		// Only check items matching a pattern (if provided).
-		if (regexProvided && !jobnameMatchesPattern(item.getName()))
+		// Do not check folders which can't contain selected jobs.
+		if (selector.decide(group) == JobSelector.Decision.REJECT_ALL)
 			return false;
 
 		return true;
 	}
 
-	private boolean jobHasNoBuildsAndExistsTooLong(Job<?, ?> job) {
+	private boolean isCandidate(Item item) {
+		// Only check TopLevelItems.
+		if (!(item instanceof TopLevelItem)) {
+			statistics.rejected(ScanStatistics.REJECTED_NOT_TOP_LEVEL);
+			return false;
+		}
+
+		// Only check jobs.
+		if (!(item instanceof Job)) {
+			statistics.rejected(ScanStatistics.REJECTED_NOT_JOB);
+			return false;
+		}
+
+		return true;
+	}
 
-		logger.log(Level.FINEST,
-				"Check if job " + job.getName() + " has no builds.");
+	private boolean jobHasNoBuildsAndExistsTooLong(Job<?, ?> job) {
+		if (logger.isLoggable(Level.FINEST))
+			logger.log(Level.FINEST,
+					"Check if job " + job.getName() + " has no builds.");
 
+		buildsLoaded.incrementAndGet();
 		if (!job.getBuilds().isEmpty())
 			return false;
 
@@ -140,37 +673,112 @@ public class JobScanner {
 	 * successful build, if the jobs exists too long
 	 */
 	private boolean jobHasNoSuccessfulBuilds(Job<?, ?> job) {
-		logger.log(Level.FINEST,
-				"Check if job " + job.getName() + " has no successful builds.");
+		if (logger.isLoggable(Level.FINEST))
+			logger.log(Level.FINEST, "Check if job " + job.getName()
+					+ " has no successful builds.");
 
+		buildsLoaded.incrementAndGet();
 		Run<?, ?> lastSuccessfulBuild = job.getLastSuccessfulBuild();
 
 		if (lastSuccessfulBuild != null
 				&& isInDeadline(lastSuccessfulBuild.getTimeInMillis()))
 			return false;
 
+		if (lastSuccessfulBuild != null)
+			return true;
+
+		buildsLoaded.incrementAndGet();
 		Run<?, ?> firstBuild = job.getFirstBuild();
 
-		if (lastSuccessfulBuild == null
-				&& isInDeadline(firstBuild.getTimeInMillis()))
+		if (firstBuild == null || isInDeadline(firstBuild.getTimeInMillis()))
 			return false;
 
 		return true;
 	}
 
-	private boolean isInDeadline(long jobtime) {
+	/**
+	 * @return true, if the given time is less than the configured number of
+	 *         days ago
+	 */
+	public boolean isInDeadline(long jobtime) {
 		if ((systemtime - jobtime) < lastSuccessfulBuild)
 			return true;
 
 		return false;
 	}
 
+	/**
+	 * @return the result or null, if the detection has not finished
+	 */
+	public ResultTable getResult() {
+		return result;
+	}
+
+	/**
+	 * @return the detected jobs which still exist or null, if the detection
+	 *         has not finished
+	 */
 	public List<Job<?, ?>> getDetectedJobs() {
-		return detectedJobs;
+		ResultTable result = this.result;
+		return result == null ? null : result.getJobs();
 	}
 
-	private boolean jobnameMatchesPattern(String jobName) {
-		return Pattern.matches(regex, jobName);
+	/**
+	 * Accepts the jobs matched by the include and exclude rules.
+	 */
+	@Extension
+	public static class SelectedCriterion extends DetectionCriterion {
+
+		@Override
+		public int getCost() {
+			return COST_NAME;
+		}
+
+		@Override
+		public boolean accept(Job<?, ?> job, JobScanner scanner) {
+			return scanner.getSelector().matches(job);
+		}
+	}
+
+	/**
+	 * Rejects jobs which are already disabled, if requested.
+	 */
+	@Extension
+	public static class NotDisabledCriterion extends DetectionCriterion {
+
+		@Override
+		public int getCost() {
+			return COST_FLAG;
+		}
+
+		@Override
+		public boolean isApplicable(JobScanner scanner) {
+			return scanner.isSkipDisabled();
+		}
+
+		@Override
+		public boolean accept(Job<?, ?> job, JobScanner scanner) {
+			if (!Util.isInstanceOfAbstractProject(job))
+				return true;
+			return !((AbstractProject<?, ?>) job).isDisabled();
+		}
+	}
+
+	/**
+	 * Accepts jobs without a successful build within the deadline.
+	 */
+	@Extension
+	public static class StaleCriterion extends DetectionCriterion {
+
+		@Override
+		public int getCost() {
+			return COST_BUILD_RECORDS;
+		}
+
+		@Override
+		public boolean accept(Job<?, ?> job, JobScanner scanner) {
+			return scanner.isStale(job);
+		}
 	}
 
 }
@@ -0,0 +1,391 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 Jochen A. Fuerbacher, 1&1 Telecommunication SE
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.einsundeins.jenkins.plugins.failedjobdeactivator;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import hudson.model.Item;
+import hudson.model.ItemGroup;
+
+/**
+ * Selects jobs by their full name with include and exclude rules. A job is
+ * selected, if it matches any include rule (or there is none) and no exclude
+ * rule.
+ *
+ * <p>
+ * Rules are given one per line and are compiled once:
+ * <ul>
+ * <li><code>regex:</code> or no prefix: a regular expression matching the
+ * whole full name</li>
+ * <li><code>glob:</code> a glob, where <code>*</code> and <code>?</code> do
+ * not cross folders and <code>**</code> does</li>
+ * <li><code>folder:</code> all jobs below a folder</li>
+ * </ul>
+ *
+ * Folder rules are kept in a trie over the folder path. Together with the
+ * regular expressions this decides for a whole folder, whether none, all or
+ * only some of the jobs below it can be selected.
+ */
+public class JobSelector {
+
+	public enum Decision {
+		/** No job below the folder can be selected. */
+		REJECT_ALL,
+		/** Every job below the folder is selected. */
+		ACCEPT_ALL,
+		/** Jobs below the folder have to be matched one by one. */
+		MATCH_EACH
+	}
+
+	private static final String REGEX_PREFIX = "regex:";
+	private static final String GLOB_PREFIX = "glob:";
+	private static final String FOLDER_PREFIX = "folder:";
+
+	private final List<Pattern> includePatterns = new ArrayList<>();
+	private final List<Pattern> excludePatterns = new ArrayList<>();
+	private final FolderTrie folders = new FolderTrie();
+	private boolean hasIncludes;
+
+	// Decisions by full name of the folder, "" for the root
+	private final ConcurrentMap<String, Decision> decisions = new ConcurrentHashMap<>();
+
+	/**
+	 * @param includes
+	 *            include rules, one per line
+	 * @param excludes
+	 *            exclude rules, one per line
+	 * @throws IllegalArgumentException
+	 *             if a regular expression is invalid
+	 */
+	public JobSelector(String includes, String excludes) {
+		addRules(includes, true);
+		addRules(excludes, false);
+	}
+
+	/**
+	 * @return a selector selecting all jobs, if the regular expression is
+	 *         null or empty
+	 */
+	public static JobSelector forRegex(String regex) {
+		if (regex == null || regex.isEmpty())
+			return new JobSelector(null, null);
+
+		return new JobSelector(REGEX_PREFIX + regex, null);
+	}
+
+	private void addRules(String rules, boolean include) {
+		if (rules == null)
+			return;
+
+		for (String line : rules.split("\\r?\\n")) {
+			String rule = line.trim();
+			if (rule.isEmpty())
+				continue;
+
+			if (include)
+				hasIncludes = true;
+
+			if (rule.startsWith(FOLDER_PREFIX)) {
+				folders.add(rule.substring(FOLDER_PREFIX.length()), include);
+				continue;
+			}
+
+			Pattern pattern;
+			try {
+				if (rule.startsWith(GLOB_PREFIX))
+					pattern = Pattern.compile(
+							globToRegex(rule.substring(GLOB_PREFIX.length())));
+				else if (rule.startsWith(REGEX_PREFIX))
+					pattern = Pattern
+							.compile(rule.substring(REGEX_PREFIX.length()));
+				else
+					pattern = Pattern.compile(rule);
+			} catch (PatternSyntaxException e) {
+				throw new IllegalArgumentException(
+						"Invalid rule '" + rule + "': " + e.getDescription(),
+						e);
+			}
+
+			if (include)
+				includePatterns.add(pattern);
+			else
+				excludePatterns.add(pattern);
+		}
+	}
+
+	static String globToRegex(String glob) {
+		StringBuilder regex = new StringBuilder();
+		StringBuilder literal = new StringBuilder();
+		for (int i = 0; i < glob.length(); i++) {
+			char c = glob.charAt(i);
+			if (c != '*' && c != '?') {
+				literal.append(c);
+				continue;
+			}
+
+			if (literal.length() > 0) {
+				regex.append(Pattern.quote(literal.toString()));
+				literal.setLength(0);
+			}
+			if (c == '?') {
+				regex.append("[^/]");
+			} else if (i + 1 < glob.length() && glob.charAt(i + 1) == '*') {
+				regex.append(".*");
+				i++;
+			} else {
+				regex.append("[^/]*");
+			}
+		}
+		if (literal.length() > 0)
+			regex.append(Pattern.quote(literal.toString()));
+		return regex.toString();
+	}
+
+	/**
+	 * @return true, if the selector selects every job
+	 */
+	public boolean isEmpty() {
+		return !hasIncludes && excludePatterns.isEmpty() && folders.isEmpty();
+	}
+
+	/**
+	 * Checks whether an item is selected. The decision for the folder of the
+	 * item is reused, so most items are not matched themselves.
+	 */
+	public boolean matches(Item item) {
+		switch (decide(item.getParent())) {
+			case REJECT_ALL :
+				return false;
+			case ACCEPT_ALL :
+				return true;
+			default :
+				return matches(item.getFullName());
+		}
+	}
+
+	/**
+	 * Checks whether a job with the full name is selected.
+	 */
+	public boolean matches(String fullName) {
+		if (folders.isExcluded(fullName))
+			return false;
+
+		for (Pattern pattern : excludePatterns) {
+			if (pattern.matcher(fullName).matches())
+				return false;
+		}
+
+		if (!hasIncludes || folders.isIncluded(fullName))
+			return true;
+
+		for (Pattern pattern : includePatterns) {
+			if (pattern.matcher(fullName).matches())
+				return true;
+		}
+
+		return false;
+	}
+
+	/**
+	 * Decides about all items in an item group.
+	 */
+	public Decision decide(ItemGroup<?> group) {
+		if (group instanceof Item)
+			return decide(((Item) group).getFullName());
+
+		return decide("");
+	}
+
+	/**
+	 * Decides about all items below the folder with the full name.
+	 */
+	public Decision decide(String folderFullName) {
+		Decision decision = decisions.get(folderFullName);
+		if (decision == null) {
+			decision = computeDecision(folderFullName);
+			decisions.putIfAbsent(folderFullName, decision);
+		}
+		return decision;
+	}
+
+	private Decision computeDecision(String folderFullName) {
+		String prefix = folderFullName.isEmpty() ? "" : folderFullName + "/";
+
+		if (!prefix.isEmpty() && folders.isExcluded(prefix))
+			return Decision.REJECT_ALL;
+
+		boolean includedByFolder = !prefix.isEmpty()
+				&& folders.isIncluded(prefix);
+		boolean includesAll = !hasIncludes || includedByFolder;
+
+		if (!includesAll && !folders.hasIncludesBelow(prefix)
+				&& !canMatchBelow(includePatterns, prefix))
+			return Decision.REJECT_ALL;
+
+		if (includesAll && !folders.hasExcludesBelow(prefix)
+				&& !canMatchBelow(excludePatterns, prefix))
+			return Decision.ACCEPT_ALL;
+
+		return Decision.MATCH_EACH;
+	}
+
+	/**
+	 * Checks whether any of the patterns can match a name starting with the
+	 * prefix. If the matcher fails without reaching the end of the prefix,
+	 * no continuation of the prefix can match.
+	 */
+	private static boolean canMatchBelow(List<Pattern> patterns,
+			String prefix) {
+		for (Pattern pattern : patterns) {
+			Matcher matcher = pattern.matcher(prefix);
+			if (matcher.matches() || matcher.hitEnd())
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Trie of the folder rules, one node per path segment.
+	 */
+	private static class FolderTrie {
+
+		private static class Node {
+			final Map<String, Node> children = new HashMap<>();
+			boolean include;
+			boolean exclude;
+			boolean includeBelow;
+			boolean excludeBelow;
+		}
+
+		private final Node root = new Node();
+		private boolean empty = true;
+
+		void add(String folder, boolean include) {
+			Node node = root;
+			for (String segment : segments(folder)) {
+				if (include)
+					node.includeBelow = true;
+				else
+					node.excludeBelow = true;
+
+				Node child = node.children.get(segment);
+				if (child == null) {
+					child = new Node();
+					node.children.put(segment, child);
+				}
+				node = child;
+			}
+			if (include)
+				node.include = true;
+			else
+				node.exclude = true;
+			empty = false;
+		}
+
+		boolean isEmpty() {
+			return empty;
+		}
+
+		/**
+		 * @return true, if an ancestor of the item is an included folder
+		 */
+		boolean isIncluded(String fullName) {
+			Node node = root;
+			for (String segment : parentSegments(fullName)) {
+				node = node.children.get(segment);
+				if (node == null)
+					return false;
+				if (node.include)
+					return true;
+			}
+			return false;
+		}
+
+		/**
+		 * @return true, if an ancestor of the item is an excluded folder
+		 */
+		boolean isExcluded(String fullName) {
+			Node node = root;
+			for (String segment : parentSegments(fullName)) {
+				node = node.children.get(segment);
+				if (node == null)
+					return false;
+				if (node.exclude)
+					return true;
+			}
+			return false;
+		}
+
+		boolean hasIncludesBelow(String prefix) {
+			Node node = find(prefix);
+			return node != null && node.includeBelow;
+		}
+
+		boolean hasExcludesBelow(String prefix) {
+			Node node = find(prefix);
+			return node != null && node.excludeBelow;
+		}
+
+		private Node find(String prefix) {
+			Node node = root;
+			for (String segment : parentSegments(prefix)) {
+				node = node.children.get(segment);
+				if (node == null)
+					return null;
+			}
+			return node;
+		}
+
+		private static String[] segments(String path) {
+			String trimmed = path.trim();
+			while (trimmed.startsWith("/"))
+				trimmed = trimmed.substring(1);
+			while (trimmed.endsWith("/"))
+				trimmed = trimmed.substring(0, trimmed.length() - 1);
+			if (trimmed.isEmpty())
+				return new String[0];
+			return trimmed.split("/");
+		}
+
+		/**
+		 * Splits off the last segment, which is the item itself. A prefix
+		 * ending with a slash has no such segment.
+		 */
+		private static String[] parentSegments(String fullName) {
+			int end = fullName.lastIndexOf('/');
+			if (end < 0)
+				return new String[0];
+			return segments(fullName.substring(0, end));
+		}
+	}
+
+}
@@ -0,0 +1,157 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 Jochen A. Fuerbacher, 1&1 Telecommunication SE
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.einsundeins.jenkins.plugins.failedjobdeactivator;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import hudson.model.AbstractProject;
+import hudson.model.Item;
+import hudson.model.ItemGroup;
+import hudson.model.Job;
+import jenkins.model.Jenkins;
+
+/**
+ * Deletes jobs by moving their directory into a trash directory below
+ * JENKINS_HOME with a single rename. The {@link TrashReaper} reclaims the
+ * disk space later.
+ *
+ * <p>
+ * Until then a job can be restored by moving its directory back and
+ * reloading the configuration from disk. The full name of the job is kept in
+ * {@link #ORIGIN_FILENAME}.
+ */
+public class JobTrash {
+
+	private static Logger logger = Logger.getLogger(JobTrash.class.getName());
+
+	static final String TRASH_DIRECTORY = "trash";
+	static final String ORIGIN_FILENAME = "failedJobDeactivator-origin.txt";
+
+	private JobTrash() {
+	}
+
+	/**
+	 * @return the trash directory or null, if Jenkins is not running
+	 */
+	static File getTrashDir() {
+		Jenkins jenkins = Jenkins.getInstance();
+		if (jenkins == null)
+			return null;
+		return new File(new File(jenkins.getRootDir(),
+				Constants.PLUGIN_DIRECTORY), TRASH_DIRECTORY);
+	}
+
+	/**
+	 * @return the time the entry of the trash directory has been moved there
+	 */
+	static long getTrashedAt(File entry) {
+		String name = entry.getName();
+		int separator = name.indexOf('-');
+		if (separator > 0) {
+			try {
+				return Long.parseLong(name.substring(0, separator));
+			} catch (NumberFormatException e) {
+				// Not created by moveToTrash.
+			}
+		}
+		return entry.lastModified();
+	}
+
+	/**
+	 * Removes the job from Jenkins and moves its directory into the trash.
+	 *
+	 * @throws AtomicMoveNotSupportedException
+	 *             if the trash is on another file system than the job. The
+	 *             job is unchanged then, like after any other failed move.
+	 */
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	public static void moveToTrash(Job<?, ?> job) throws IOException {
+		job.checkPermission(Item.DELETE);
+
+		if (job.isBuilding())
+			throw new IOException(job.getFullName() + " is building.");
+
+		File trashDir = getTrashDir();
+		if (trashDir == null)
+			throw new IOException("Jenkins is not running.");
+
+		Path source = job.getRootDir().toPath();
+		Path target = trashDir.toPath().resolve(System.currentTimeMillis()
+				+ "-" + job.getFullName().replace('/', '_'));
+		Files.createDirectories(trashDir.toPath());
+		if (!Files.getFileStore(source)
+				.equals(Files.getFileStore(trashDir.toPath())))
+			throw new AtomicMoveNotSupportedException(source.toString(),
+					target.toString(), "The trash is on another file system.");
+
+		synchronized (job) {
+			// Prevent new builds like AbstractProject.performDelete() does.
+			AbstractProject<?, ?> project = job instanceof AbstractProject
+					? (AbstractProject<?, ?>) job : null;
+			boolean disabled = project != null && project.isDisabled();
+			if (project != null && !disabled)
+				project.makeDisabled(true);
+
+			try {
+				Files.move(source, target, StandardCopyOption.ATOMIC_MOVE);
+			} catch (IOException e) {
+				if (project != null && !disabled) {
+					try {
+						project.makeDisabled(false);
+					} catch (IOException restoreFailure) {
+						e.addSuppressed(restoreFailure);
+					}
+				}
+				throw e;
+			}
+		}
+
+		try {
+			Files.write(target.resolve(ORIGIN_FILENAME),
+					job.getFullName().getBytes(StandardCharsets.UTF_8));
+		} catch (IOException e) {
+			logger.log(Level.FINE, "Cannot record origin of " + target, e);
+		}
+
+		// Unregisters the job and notifies the ItemListeners.
+		ItemGroup parent = job.getParent();
+		parent.onDeleted(job);
+
+		Jenkins jenkins = Jenkins.getInstance();
+		if (jenkins != null)
+			jenkins.rebuildDependencyGraphAsync();
+
+		logger.log(Level.INFO,
+				"Moved job " + job.getFullName() + " to " + target + ".");
+	}
+
+}
@@ -0,0 +1,180 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 Jochen A. Fuerbacher, 1&1 Telecommunication SE
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.einsundeins.jenkins.plugins.failedjobdeactivator;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Date;
+
+import hudson.model.Job;
+import net.sf.json.JSONNull;
+import net.sf.json.JSONObject;
+
+/**
+ * Writes the detected jobs row by row, so a report needs no more memory
+ * than a single row.
+ */
+public class ReportWriter {
+
+	public enum Format {
+		CSV("text/csv", Constants.CSV_FILENAME), NDJSON(
+				"application/x-ndjson", Constants.NDJSON_FILENAME);
+
+		private final String contentType;
+		private final String filename;
+
+		Format(String contentType, String filename) {
+			this.contentType = contentType;
+			this.filename = filename;
+		}
+
+		public String getContentType() {
+			return contentType;
+		}
+
+		public String getFilename() {
+			return filename;
+		}
+	}
+
+	private final Format format;
+	private final boolean withFailureCauses;
+	private final boolean withLastUser;
+	private final EnrichmentCache enrichmentCache;
+	private EnrichmentStage enrichmentStage;
+
+	/**
+	 * @param withFailureCauses
+	 *            adds the failure causes of the last build
+	 * @param withLastUser
+	 *            adds the user who changed the configuration last
+	 * @param enrichmentCache
+	 *            provides the failure causes and the last user
+	 */
+	public ReportWriter(Format format, boolean withFailureCauses,
+			boolean withLastUser, EnrichmentCache enrichmentCache) {
+		this.format = format;
+		this.withFailureCauses = withFailureCauses;
+		this.withLastUser = withLastUser;
+		this.enrichmentCache = enrichmentCache;
+	}
+
+	/**
+	 * Takes the values from the stage of the detection, which reports the
+	 * lookups that failed as unknown.
+	 */
+	public void setEnrichmentStage(EnrichmentStage enrichmentStage) {
+		this.enrichmentStage = enrichmentStage;
+	}
+
+	/**
+	 * Writes the rows of a detection result. The build times are taken from
+	 * the table, jobs are only looked up for the failure causes and the last
+	 * user.
+	 */
+	public void write(ResultTable table, Writer writer) throws IOException {
+		for (int i = 0; i < table.size(); i++) {
+			Job<?, ?> job = withFailureCauses || withLastUser
+					? table.getJob(i)
+					: null;
+			String failureCauses = null;
+			if (withFailureCauses)
+				failureCauses = enrichmentStage != null
+						? enrichmentStage.getFailureCauses(job)
+						: enrichmentCache.getFailureCauses(job);
+			String lastUser = null;
+			if (withLastUser)
+				lastUser = enrichmentStage != null
+						? enrichmentStage.getLastUser(job)
+						: enrichmentCache.getLastUser(job);
+
+			if (format == Format.NDJSON)
+				writeJson(writer, table.getFullName(i),
+						table.getLastSuccessfulBuild(i), table.getLastBuild(i),
+						failureCauses, lastUser);
+			else
+				writeCsv(writer, table.getFullName(i),
+						table.getLastSuccessfulBuild(i), table.getLastBuild(i),
+						failureCauses, lastUser);
+		}
+		writer.flush();
+	}
+
+	private void writeCsv(Writer writer, String fullName,
+			long lastSuccessfulBuild, long lastBuild, String failureCauses,
+			String lastUser) throws IOException {
+		writer.write(escapeCsv(fullName));
+		writer.write(',');
+		if (lastSuccessfulBuild != -1)
+			writer.write(new Date(lastSuccessfulBuild).toString());
+		writer.write(',');
+		if (lastBuild != -1)
+			writer.write(new Date(lastBuild).toString());
+		if (withFailureCauses) {
+			writer.write(',');
+			writer.write(escapeCsv(failureCauses));
+		}
+		if (withLastUser) {
+			writer.write(',');
+			writer.write(escapeCsv(lastUser));
+		}
+		writer.write('\n');
+	}
+
+	private void writeJson(Writer writer, String fullName,
+			long lastSuccessfulBuild, long lastBuild, String failureCauses,
+			String lastUser) throws IOException {
+		JSONObject row = new JSONObject();
+		row.put("fullName", fullName);
+		row.put("lastSuccessfulBuild", lastSuccessfulBuild != -1
+				? lastSuccessfulBuild
+				: JSONNull.getInstance());
+		row.put("lastBuild",
+				lastBuild != -1 ? lastBuild : JSONNull.getInstance());
+		if (withFailureCauses)
+			row.put("failureCauses", failureCauses != null
+					? failureCauses.trim()
+					: JSONNull.getInstance());
+		if (withLastUser)
+			row.put("lastUser",
+					lastUser != null ? lastUser : JSONNull.getInstance());
+		row.write(writer);
+		writer.write('\n');
+	}
+
+	/**
+	 * Quotes a value if it contains a separator, a quote or a line break.
+	 */
+	static String escapeCsv(String value) {
+		if (value == null)
+			return "";
+
+		if (value.indexOf(',') < 0 && value.indexOf('"') < 0
+				&& value.indexOf('\n') < 0 && value.indexOf('\r') < 0)
+			return value;
+
+		return '"' + value.replace("\"", "\"\"") + '"';
+	}
+
+}
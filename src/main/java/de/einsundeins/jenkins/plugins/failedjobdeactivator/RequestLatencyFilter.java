@@ -0,0 +1,171 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 Jochen A. Fuerbacher, 1&1 Telecommunication SE
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.einsundeins.jenkins.plugins.failedjobdeactivator;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+
+import hudson.util.PluginServletFilter;
+
+/**
+ * Measures how long the controller takes to answer HTTP requests, so bulk
+ * actions can back off when the UI gets slow. Only the latest
+ * {@link #SAMPLES} requests within {@link #MAX_AGE_MILLIS} count.
+ *
+ * <p>
+ * The filter is only registered while a throttled handling runs, see
+ * {@link #register()}. Requests to this plugin, e.g. polling the progress,
+ * are not measured.
+ */
+public class RequestLatencyFilter implements Filter {
+
+	private static final Logger logger = Logger
+			.getLogger(RequestLatencyFilter.class.getName());
+
+	static final int SAMPLES = 128;
+
+	static final long MAX_AGE_MILLIS = 30 * 1000;
+
+	/**
+	 * Minimum number of recent requests for a meaningful latency.
+	 */
+	static final int MIN_SAMPLES = 5;
+
+	static final String PLUGIN_PATH = "/plugin/failedJobDeactivator/";
+
+	// Ring buffer of the end time and the duration of each request. A
+	// sample may be read while it is overwritten, which doesn't matter for
+	// the median.
+	private final AtomicLongArray times = new AtomicLongArray(SAMPLES);
+	private final AtomicLongArray millis = new AtomicLongArray(SAMPLES);
+	private final AtomicInteger next = new AtomicInteger();
+
+	private int users;
+
+	@Override
+	public void init(FilterConfig filterConfig) throws ServletException {
+		// Nothing to initialize.
+	}
+
+	@Override
+	public void doFilter(ServletRequest request, ServletResponse response,
+			FilterChain chain) throws IOException, ServletException {
+		if (isOwnRequest(request)) {
+			chain.doFilter(request, response);
+			return;
+		}
+
+		long start = System.nanoTime();
+		try {
+			chain.doFilter(request, response);
+		} finally {
+			record(System.currentTimeMillis(),
+					(System.nanoTime() - start) / 1000000);
+		}
+	}
+
+	private static boolean isOwnRequest(ServletRequest request) {
+		if (!(request instanceof HttpServletRequest))
+			return false;
+		HttpServletRequest httpRequest = (HttpServletRequest) request;
+		String path = httpRequest.getRequestURI();
+		return path != null && path.startsWith(
+				httpRequest.getContextPath() + PLUGIN_PATH);
+	}
+
+	@Override
+	public void destroy() {
+		// Nothing to clean up.
+	}
+
+	/**
+	 * Starts measuring the requests, unless it is measuring already. Every
+	 * call has to be followed by {@link #unregister()}.
+	 */
+	public synchronized void register() {
+		if (users++ > 0)
+			return;
+		try {
+			PluginServletFilter.addFilter(this);
+		} catch (ServletException e) {
+			logger.log(Level.WARNING, "Cannot measure the requests.", e);
+		}
+	}
+
+	/**
+	 * Stops measuring the requests, once every caller of
+	 * {@link #register()} is done.
+	 */
+	public synchronized void unregister() {
+		if (users == 0 || --users > 0)
+			return;
+		try {
+			PluginServletFilter.removeFilter(this);
+		} catch (ServletException e) {
+			logger.log(Level.WARNING, "Cannot stop measuring the requests.",
+					e);
+		}
+		// Samples from this run must not slow down the next one.
+		for (int i = 0; i < SAMPLES; i++)
+			times.set(i, 0);
+	}
+
+	void record(long time, long duration) {
+		int index = (next.getAndIncrement() & Integer.MAX_VALUE) % SAMPLES;
+		millis.set(index, duration);
+		times.set(index, time);
+	}
+
+	/**
+	 * @return the median duration of the recent requests in milliseconds or
+	 *         -1, if there are too few of them
+	 */
+	public long getMedianMillis(long now) {
+		long[] recent = new long[SAMPLES];
+		int count = 0;
+		for (int i = 0; i < SAMPLES; i++) {
+			long time = times.get(i);
+			if (time != 0 && now - time <= MAX_AGE_MILLIS)
+				recent[count++] = millis.get(i);
+		}
+		if (count < MIN_SAMPLES)
+			return -1;
+
+		Arrays.sort(recent, 0, count);
+		return recent[count / 2];
+	}
+
+}
@@ -0,0 +1,450 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 Jochen A. Fuerbacher, 1&1 Telecommunication SE
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.einsundeins.jenkins.plugins.failedjobdeactivator;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
+
+import hudson.model.AbstractProject;
+import hudson.model.Job;
+import hudson.model.Run;
+import net.sf.json.JSONObject;
+
+/**
+ * The detected jobs prepared for paging, sorting and filtering.
+ *
+ * <p>
+ * The result is stored in columns of interned full names and primitive
+ * values instead of references to the jobs, so it doesn't keep jobs and
+ * their loaded builds reachable. Jobs are looked up by name when needed.
+ */
+public class ResultTable {
+
+	public static final String SORT_NAME = "name";
+	public static final String SORT_LAST_SUCCESSFUL_BUILD = "lastSuccessfulBuild";
+	public static final String SORT_LAST_BUILD = "lastBuild";
+	public static final String SORT_BYTES = "bytes";
+
+	/**
+	 * Size of a job whose disk usage has not been measured.
+	 */
+	public static final long UNKNOWN_SIZE = -1;
+
+	/**
+	 * Status bit of jobs which can get disabled.
+	 */
+	public static final int STATUS_CAN_DISABLE = 1;
+
+	/**
+	 * Status bit of jobs which have been disabled at detection time.
+	 */
+	public static final int STATUS_DISABLED = 2;
+
+	// Names are shared between the results of several detections.
+	private static final Interner<String> NAMES = Interners
+			.newWeakInterner();
+
+	/**
+	 * A single detected job, created on demand.
+	 */
+	public static final class Row {
+
+		private final String fullName;
+		private final long lastSuccessfulBuild;
+		private final long lastBuild;
+		private final int status;
+		private final long bytes;
+
+		Row(String fullName, long lastSuccessfulBuild, long lastBuild,
+				int status, long bytes) {
+			this.fullName = fullName;
+			this.lastSuccessfulBuild = lastSuccessfulBuild;
+			this.lastBuild = lastBuild;
+			this.status = status;
+			this.bytes = bytes;
+		}
+
+		public String getFullName() {
+			return fullName;
+		}
+
+		/**
+		 * @return the start time or -1, if there is no such build
+		 */
+		public long getLastSuccessfulBuild() {
+			return lastSuccessfulBuild;
+		}
+
+		/**
+		 * @return the start time or -1, if there is no build
+		 */
+		public long getLastBuild() {
+			return lastBuild;
+		}
+
+		public boolean canDisable() {
+			return (status & STATUS_CAN_DISABLE) != 0;
+		}
+
+		public boolean isDisabled() {
+			return (status & STATUS_DISABLED) != 0;
+		}
+
+		/**
+		 * @return the bytes a deletion would free or
+		 *         {@link ResultTable#UNKNOWN_SIZE}
+		 */
+		public long getBytes() {
+			return bytes;
+		}
+
+		public JSONObject toJson() {
+			JSONObject json = new JSONObject();
+			json.put("fullName", fullName);
+			json.put("lastSuccessfulBuild", lastSuccessfulBuild);
+			json.put("lastBuild", lastBuild);
+			json.put("canDisable", canDisable());
+			json.put("disabled", isDisabled());
+			json.put("bytes", bytes);
+			return json;
+		}
+	}
+
+	/**
+	 * Collects the columns row by row.
+	 */
+	public static final class Builder {
+
+		private String[] fullNames = new String[16];
+		private long[] lastSuccessfulBuilds = new long[16];
+		private long[] lastBuilds = new long[16];
+		private byte[] status = new byte[16];
+		private long[] bytes = new long[16];
+		private int size;
+
+		public Builder add(String fullName, long lastSuccessfulBuild,
+				long lastBuild, int status) {
+			return add(fullName, lastSuccessfulBuild, lastBuild, status,
+					UNKNOWN_SIZE);
+		}
+
+		public Builder add(String fullName, long lastSuccessfulBuild,
+				long lastBuild, int status, long bytes) {
+			if (size == fullNames.length) {
+				int capacity = size * 2;
+				fullNames = Arrays.copyOf(fullNames, capacity);
+				lastSuccessfulBuilds = Arrays.copyOf(lastSuccessfulBuilds,
+						capacity);
+				lastBuilds = Arrays.copyOf(lastBuilds, capacity);
+				this.status = Arrays.copyOf(this.status, capacity);
+				this.bytes = Arrays.copyOf(this.bytes, capacity);
+			}
+			fullNames[size] = NAMES.intern(fullName);
+			lastSuccessfulBuilds[size] = lastSuccessfulBuild;
+			lastBuilds[size] = lastBuild;
+			this.status[size] = (byte) status;
+			this.bytes[size] = bytes;
+			size++;
+			return this;
+		}
+
+		/**
+		 * Copies a row of another table.
+		 */
+		public Builder add(ResultTable table, int index) {
+			return add(table.getFullName(index),
+					table.getLastSuccessfulBuild(index),
+					table.getLastBuild(index), table.getStatus(index),
+					table.getBytes(index));
+		}
+
+		public ResultTable build() {
+			return new ResultTable(Arrays.copyOf(fullNames, size),
+					Arrays.copyOf(lastSuccessfulBuilds, size),
+					Arrays.copyOf(lastBuilds, size),
+					Arrays.copyOf(status, size), Arrays.copyOf(bytes, size));
+		}
+	}
+
+	private final String[] fullNames;
+	private final long[] lastSuccessfulBuilds;
+	private final long[] lastBuilds;
+	private final byte[] status;
+	// Measured after the detection, see DiskUsageStage
+	private final AtomicLongArray bytes;
+
+	// Row indices ordered by each sort key, computed on first use
+	private int[] byName;
+	private int[] byLastSuccessfulBuild;
+	private int[] byLastBuild;
+	private int[] byBytes;
+
+	private ResultTable(String[] fullNames, long[] lastSuccessfulBuilds,
+			long[] lastBuilds, byte[] status, long[] bytes) {
+		this.fullNames = fullNames;
+		this.lastSuccessfulBuilds = lastSuccessfulBuilds;
+		this.lastBuilds = lastBuilds;
+		this.status = status;
+		this.bytes = new AtomicLongArray(bytes);
+	}
+
+	public static ResultTable empty() {
+		return new Builder().build();
+	}
+
+	/**
+	 * Reads the build times of the given jobs, from the health index if
+	 * possible.
+	 *
+	 * @param healthIndex
+	 *            the index or null, to read the builds
+	 */
+	public static ResultTable of(List<Job<?, ?>> jobs,
+			JobHealthIndex healthIndex) {
+		boolean canPipelineJobsGetDisabled = Util.canPipelineJobsGetDisabled();
+		Builder builder = new Builder();
+		for (Job<?, ?> job : jobs) {
+			long lastSuccessfulBuild;
+			long lastBuild;
+			JobHealthIndex.Entry entry = healthIndex == null ? null
+					: healthIndex.get(job);
+			if (entry != null) {
+				lastSuccessfulBuild = entry.getLastSuccessfulBuild();
+				lastBuild = entry.getLastBuild();
+			} else {
+				Run<?, ?> run = job.getLastSuccessfulBuild();
+				lastSuccessfulBuild = run == null ? -1 : run.getTimeInMillis();
+				run = job.getLastBuild();
+				lastBuild = run == null ? -1 : run.getTimeInMillis();
+			}
+
+			int status = 0;
+			boolean isAbstractProject = Util.isInstanceOfAbstractProject(job);
+			if (isAbstractProject || canPipelineJobsGetDisabled)
+				status |= STATUS_CAN_DISABLE;
+			if (isAbstractProject && ((AbstractProject<?, ?>) job).isDisabled())
+				status |= STATUS_DISABLED;
+
+			builder.add(job.getFullName(), lastSuccessfulBuild, lastBuild,
+					status);
+		}
+		return builder.build();
+	}
+
+	public int size() {
+		return fullNames.length;
+	}
+
+	public String getFullName(int index) {
+		return fullNames[index];
+	}
+
+	public long getLastSuccessfulBuild(int index) {
+		return lastSuccessfulBuilds[index];
+	}
+
+	public long getLastBuild(int index) {
+		return lastBuilds[index];
+	}
+
+	public int getStatus(int index) {
+		return status[index];
+	}
+
+	/**
+	 * @return the bytes a deletion of the job would free or
+	 *         {@link #UNKNOWN_SIZE}
+	 */
+	public long getBytes(int index) {
+		return bytes.get(index);
+	}
+
+	synchronized void setBytes(int index, long value) {
+		bytes.set(index, value);
+		byBytes = null;
+	}
+
+	/**
+	 * @return the bytes a deletion of all jobs measured so far would free
+	 */
+	public long getTotalBytes() {
+		long total = 0;
+		for (int i = 0; i < bytes.length(); i++)
+			total += Math.max(bytes.get(i), 0);
+		return total;
+	}
+
+	public Row getRow(int index) {
+		return new Row(fullNames[index], lastSuccessfulBuilds[index],
+				lastBuilds[index], status[index], bytes.get(index));
+	}
+
+	/**
+	 * @return the row of the job with the given full name or null, if it
+	 *         has not been detected
+	 */
+	public Row getRow(String fullName) {
+		int[] order = order(SORT_NAME);
+		int low = 0;
+		int high = order.length - 1;
+		while (low <= high) {
+			int middle = (low + high) >>> 1;
+			int compared = compareNames(fullNames[order[middle]], fullName);
+			if (compared < 0)
+				low = middle + 1;
+			else if (compared > 0)
+				high = middle - 1;
+			else
+				return getRow(order[middle]);
+		}
+		return null;
+	}
+
+	/**
+	 * @return the job of the given row or null, if it doesn't exist anymore
+	 */
+	public Job<?, ?> getJob(int index) {
+		return Util.getJobByName(fullNames[index]);
+	}
+
+	/**
+	 * @return the jobs which still exist, in detection order
+	 */
+	public List<Job<?, ?>> getJobs() {
+		List<Job<?, ?>> jobs = new ArrayList<>(size());
+		for (int i = 0; i < size(); i++) {
+			Job<?, ?> job = getJob(i);
+			if (job != null)
+				jobs.add(job);
+		}
+		return jobs;
+	}
+
+	/**
+	 * @param filter
+	 *            part of the full name, ignoring case, or null
+	 * @param sort
+	 *            one of the SORT_ constants, null keeps the detection order
+	 * @return the indices of the matching rows in the requested order
+	 */
+	public int[] query(String filter, String sort, boolean descending) {
+		String needle = filter == null ? "" : filter.trim();
+		int[] order = order(sort);
+		int[] result = new int[order.length];
+		int count = 0;
+		for (int i = 0; i < order.length; i++) {
+			int index = order[descending ? order.length - 1 - i : i];
+			if (containsIgnoreCase(fullNames[index], needle))
+				result[count++] = index;
+		}
+		return Arrays.copyOf(result, count);
+	}
+
+	private static boolean containsIgnoreCase(String haystack,
+			String needle) {
+		int last = haystack.length() - needle.length();
+		for (int i = 0; i <= last; i++) {
+			if (haystack.regionMatches(true, i, needle, 0, needle.length()))
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Sorts ignoring case, but still orders names differing only in case,
+	 * so the order can be searched.
+	 */
+	private static int compareNames(String name1, String name2) {
+		int compared = name1.compareToIgnoreCase(name2);
+		return compared != 0 ? compared : name1.compareTo(name2);
+	}
+
+	private synchronized int[] order(String sort) {
+		if (SORT_NAME.equals(sort)) {
+			if (byName == null)
+				byName = sort(new Comparator<Integer>() {
+					@Override
+					public int compare(Integer a, Integer b) {
+						return compareNames(fullNames[a], fullNames[b]);
+					}
+				});
+			return byName;
+		}
+		if (SORT_LAST_SUCCESSFUL_BUILD.equals(sort)) {
+			if (byLastSuccessfulBuild == null)
+				byLastSuccessfulBuild = sort(new Comparator<Integer>() {
+					@Override
+					public int compare(Integer a, Integer b) {
+						return Long.compare(lastSuccessfulBuilds[a],
+								lastSuccessfulBuilds[b]);
+					}
+				});
+			return byLastSuccessfulBuild;
+		}
+		if (SORT_LAST_BUILD.equals(sort)) {
+			if (byLastBuild == null)
+				byLastBuild = sort(new Comparator<Integer>() {
+					@Override
+					public int compare(Integer a, Integer b) {
+						return Long.compare(lastBuilds[a], lastBuilds[b]);
+					}
+				});
+			return byLastBuild;
+		}
+		if (SORT_BYTES.equals(sort)) {
+			if (byBytes == null)
+				byBytes = sort(new Comparator<Integer>() {
+					@Override
+					public int compare(Integer a, Integer b) {
+						return Long.compare(bytes.get(a), bytes.get(b));
+					}
+				});
+			return byBytes;
+		}
+
+		int[] detectionOrder = new int[size()];
+		for (int i = 0; i < detectionOrder.length; i++)
+			detectionOrder[i] = i;
+		return detectionOrder;
+	}
+
+	private int[] sort(Comparator<Integer> comparator) {
+		Integer[] boxed = new Integer[size()];
+		for (int i = 0; i < boxed.length; i++)
+			boxed[i] = i;
+		Arrays.sort(boxed, comparator);
+
+		int[] order = new int[boxed.length];
+		for (int i = 0; i < order.length; i++)
+			order[i] = boxed[i];
+		return order;
+	}
+
+}
@@ -0,0 +1,305 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 Jochen A. Fuerbacher, 1&1 Telecommunication SE
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.einsundeins.jenkins.plugins.failedjobdeactivator;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import hudson.ExtensionList;
+import hudson.ExtensionPoint;
+import jenkins.model.Jenkins;
+
+/**
+ * Collects the statistics of the recent detections and the latency of the
+ * job handling. The values are exposed as MBean and passed on to the
+ * {@link Listener}s, e.g. to the Metrics plugin.
+ */
+public class ScanMetrics implements ScanMetricsMBean {
+
+	private static final Logger logger = Logger
+			.getLogger(ScanMetrics.class.getName());
+
+	/**
+	 * Number of recent scans and handled jobs the percentiles are computed
+	 * from.
+	 */
+	static final int HISTORY = Integer
+			.getInteger(ScanMetrics.class.getName() + ".history", 100);
+
+	public static final String OBJECT_NAME = "de.einsundeins.jenkins.plugins.failedjobdeactivator:type=ScanMetrics";
+
+	/**
+	 * Gets notified about finished scans and handled jobs.
+	 */
+	public interface Listener extends ExtensionPoint {
+
+		void onScan(ScanStatistics statistics);
+
+		void onHandled(HandlingResult result);
+	}
+
+	/**
+	 * The durations of the last {@link #HISTORY} events.
+	 */
+	private static final class Window {
+
+		private final long[] millis = new long[HISTORY];
+		private int next;
+		private int size;
+
+		void add(long value) {
+			millis[next] = value;
+			next = (next + 1) % millis.length;
+			size = Math.min(size + 1, millis.length);
+		}
+
+		long percentile(double percentile) {
+			if (size == 0)
+				return 0;
+			long[] sorted = Arrays.copyOf(millis, size);
+			Arrays.sort(sorted);
+			int index = (int) Math.ceil(percentile * size) - 1;
+			return sorted[Math.max(index, 0)];
+		}
+	}
+
+	private final Window scanMillis = new Window();
+	private final Window handlingMillis = new Window();
+	private long scans;
+	private long handledJobs;
+	private long handlingFailures;
+	private volatile ScanStatistics lastScan;
+	private ObjectName registeredName;
+
+	/**
+	 * @return the metrics of the running plugin or null
+	 */
+	public static ScanMetrics get() {
+		Jenkins jenkins = Jenkins.getInstance();
+		if (jenkins == null)
+			return null;
+
+		FailedJobDeactivatorModel plugin = jenkins
+				.getPlugin(FailedJobDeactivatorModel.class);
+		if (plugin == null)
+			return null;
+
+		return plugin.getScanMetrics();
+	}
+
+	/**
+	 * Records a finished scan.
+	 */
+	public void record(ScanStatistics statistics) {
+		synchronized (this) {
+			scans++;
+			scanMillis.add(statistics.getTotalMillis());
+			lastScan = statistics;
+		}
+		for (Listener listener : listeners())
+			listener.onScan(statistics);
+	}
+
+	/**
+	 * Records a handled job.
+	 */
+	public void record(HandlingResult result) {
+		synchronized (this) {
+			handledJobs++;
+			if (!result.isSuccess())
+				handlingFailures++;
+			handlingMillis.add(result.getElapsedMillis());
+		}
+		for (Listener listener : listeners())
+			listener.onHandled(result);
+	}
+
+	private static List<Listener> listeners() {
+		Jenkins jenkins = Jenkins.getInstance();
+		if (jenkins == null)
+			return new ArrayList<>();
+		return ExtensionList.lookup(Listener.class);
+	}
+
+	/**
+	 * Registers the MBean with the platform MBean server.
+	 */
+	synchronized void register() {
+		try {
+			ObjectName name = new ObjectName(OBJECT_NAME);
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			// A previous instance is left behind, e.g. by a restart in the
+			// same JVM.
+			if (server.isRegistered(name))
+				server.unregisterMBean(name);
+			server.registerMBean(this, name);
+			registeredName = name;
+		} catch (JMException e) {
+			logger.log(Level.WARNING, "Failed to register " + OBJECT_NAME,
+					e);
+		}
+	}
+
+	synchronized void unregister() {
+		if (registeredName == null)
+			return;
+
+		try {
+			ManagementFactory.getPlatformMBeanServer()
+					.unregisterMBean(registeredName);
+		} catch (JMException e) {
+			logger.log(Level.FINE, "Failed to unregister " + OBJECT_NAME, e);
+		}
+		registeredName = null;
+	}
+
+	/**
+	 * @return the statistics of the last finished scan or null
+	 */
+	public ScanStatistics getLastScan() {
+		return lastScan;
+	}
+
+	@Override
+	public synchronized long getScans() {
+		return scans;
+	}
+
+	@Override
+	public long getLastScanMillis() {
+		ScanStatistics scan = lastScan;
+		return scan == null ? 0 : scan.getTotalMillis();
+	}
+
+	@Override
+	public long getLastWalkMillis() {
+		return getLastMillis(ScanStatistics.Phase.WALK);
+	}
+
+	@Override
+	public long getLastFilterMillis() {
+		return getLastMillis(ScanStatistics.Phase.FILTER);
+	}
+
+	@Override
+	public long getLastStalenessMillis() {
+		return getLastMillis(ScanStatistics.Phase.STALENESS);
+	}
+
+	@Override
+	public long getLastEnrichmentMillis() {
+		return getLastMillis(ScanStatistics.Phase.ENRICHMENT);
+	}
+
+	@Override
+	public long getLastDiskUsageMillis() {
+		return getLastMillis(ScanStatistics.Phase.DISK_USAGE);
+	}
+
+	private long getLastMillis(ScanStatistics.Phase phase) {
+		ScanStatistics scan = lastScan;
+		return scan == null ? 0 : scan.getMillis(phase);
+	}
+
+	@Override
+	public int getLastItemsVisited() {
+		ScanStatistics scan = lastScan;
+		return scan == null ? 0 : scan.getItemsVisited();
+	}
+
+	@Override
+	public int getLastJobsMatched() {
+		ScanStatistics scan = lastScan;
+		return scan == null ? 0 : scan.getJobsMatched();
+	}
+
+	@Override
+	public int getLastBuildsLoaded() {
+		ScanStatistics scan = lastScan;
+		return scan == null ? 0 : scan.getBuildsLoaded();
+	}
+
+	@Override
+	public String[] getLastRejections() {
+		ScanStatistics scan = lastScan;
+		if (scan == null)
+			return new String[0];
+
+		List<String> rejections = new ArrayList<>();
+		for (Map.Entry<String, Integer> entry : scan.getRejections()
+				.entrySet())
+			rejections.add(entry.getKey() + "=" + entry.getValue());
+		return rejections.toArray(new String[rejections.size()]);
+	}
+
+	@Override
+	public synchronized long getScanMillisMedian() {
+		return scanMillis.percentile(0.5);
+	}
+
+	@Override
+	public synchronized long getScanMillis95thPercentile() {
+		return scanMillis.percentile(0.95);
+	}
+
+	@Override
+	public synchronized long getScanMillisMax() {
+		return scanMillis.percentile(1);
+	}
+
+	@Override
+	public synchronized long getHandledJobs() {
+		return handledJobs;
+	}
+
+	@Override
+	public synchronized long getHandlingFailures() {
+		return handlingFailures;
+	}
+
+	@Override
+	public synchronized long getHandlingMillisMedian() {
+		return handlingMillis.percentile(0.5);
+	}
+
+	@Override
+	public synchronized long getHandlingMillis95thPercentile() {
+		return handlingMillis.percentile(0.95);
+	}
+
+	@Override
+	public synchronized long getHandlingMillisMax() {
+		return handlingMillis.percentile(1);
+	}
+
+}
@@ -0,0 +1,73 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 Jochen A. Fuerbacher, 1&1 Telecommunication SE
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.einsundeins.jenkins.plugins.failedjobdeactivator;
+
+/**
+ * The instrumentation of the detections and the job handling, as exposed
+ * through JMX.
+ */
+public interface ScanMetricsMBean {
+
+	long getScans();
+
+	long getLastScanMillis();
+
+	long getLastWalkMillis();
+
+	long getLastFilterMillis();
+
+	long getLastStalenessMillis();
+
+	long getLastEnrichmentMillis();
+
+	long getLastDiskUsageMillis();
+
+	int getLastItemsVisited();
+
+	int getLastJobsMatched();
+
+	int getLastBuildsLoaded();
+
+	/**
+	 * @return the rejected items of the last scan as "rule=count"
+	 */
+	String[] getLastRejections();
+
+	long getScanMillisMedian();
+
+	long getScanMillis95thPercentile();
+
+	long getScanMillisMax();
+
+	long getHandledJobs();
+
+	long getHandlingFailures();
+
+	long getHandlingMillisMedian();
+
+	long getHandlingMillis95thPercentile();
+
+	long getHandlingMillisMax();
+
+}
@@ -0,0 +1,117 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 Jochen A. Fuerbacher, 1&1 Telecommunication SE
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.einsundeins.jenkins.plugins.failedjobdeactivator;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.Metric;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.MetricSet;
+import com.codahale.metrics.SlidingWindowReservoir;
+
+import hudson.Extension;
+import jenkins.metrics.api.MetricProvider;
+
+/**
+ * Passes the statistics of the detections and the job handling on to the
+ * Metrics plugin, if it is installed.
+ */
+@Extension(optional = true)
+public class ScanMetricsProvider extends MetricProvider
+		implements
+			ScanMetrics.Listener {
+
+	private static final String PREFIX = "failedJobDeactivator";
+
+	private final Histogram scanMillis = histogram();
+	private final Map<ScanStatistics.Phase, Histogram> phaseMillis = new HashMap<>();
+	private final Histogram itemsVisited = histogram();
+	private final Histogram buildsLoaded = histogram();
+	private final Histogram handlingMillis = histogram();
+	private final Meter handledJobs = new Meter();
+	private final Meter handlingFailures = new Meter();
+	private final MetricSet metricSet;
+
+	public ScanMetricsProvider() {
+		final Map<String, Metric> metrics = new HashMap<>();
+		metrics.put(MetricRegistry.name(PREFIX, "scan", "millis"),
+				scanMillis);
+		for (ScanStatistics.Phase phase : ScanStatistics.Phase.values()) {
+			Histogram histogram = histogram();
+			phaseMillis.put(phase, histogram);
+			metrics.put(MetricRegistry.name(PREFIX, "scan",
+					phase.name().toLowerCase(Locale.ENGLISH), "millis"), histogram);
+		}
+		metrics.put(MetricRegistry.name(PREFIX, "scan", "itemsVisited"),
+				itemsVisited);
+		metrics.put(MetricRegistry.name(PREFIX, "scan", "buildsLoaded"),
+				buildsLoaded);
+		metrics.put(MetricRegistry.name(PREFIX, "handling", "millis"),
+				handlingMillis);
+		metrics.put(MetricRegistry.name(PREFIX, "handling", "jobs"),
+				handledJobs);
+		metrics.put(MetricRegistry.name(PREFIX, "handling", "failures"),
+				handlingFailures);
+
+		metricSet = new MetricSet() {
+			@Override
+			public Map<String, Metric> getMetrics() {
+				return Collections.unmodifiableMap(metrics);
+			}
+		};
+	}
+
+	private static Histogram histogram() {
+		return new Histogram(new SlidingWindowReservoir(ScanMetrics.HISTORY));
+	}
+
+	@Override
+	public MetricSet getMetricSet() {
+		return metricSet;
+	}
+
+	@Override
+	public void onScan(ScanStatistics statistics) {
+		scanMillis.update(statistics.getTotalMillis());
+		for (Map.Entry<ScanStatistics.Phase, Histogram> entry : phaseMillis
+				.entrySet())
+			entry.getValue().update(statistics.getMillis(entry.getKey()));
+		itemsVisited.update(statistics.getItemsVisited());
+		buildsLoaded.update(statistics.getBuildsLoaded());
+	}
+
+	@Override
+	public void onHandled(HandlingResult result) {
+		handlingMillis.update(result.getElapsedMillis());
+		handledJobs.mark();
+		if (!result.isSuccess())
+			handlingFailures.mark();
+	}
+
+}
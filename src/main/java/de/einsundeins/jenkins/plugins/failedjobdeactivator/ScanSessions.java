@@ -0,0 +1,241 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 Jochen A. Fuerbacher, 1&1 Telecommunication SE
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.einsundeins.jenkins.plugins.failedjobdeactivator;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The detections started by users, keyed by their parameters. A request
+ * with the same parameters as a running or finished detection joins it
+ * instead of scanning again, so users starting detections at the same time
+ * neither duplicate work nor replace each other's results.
+ *
+ * <p>
+ * The least recently used finished detections are dropped when there are
+ * more than {@link #MAXIMUM_SIZE}, and any finished detection nobody looked
+ * at for {@link #EXPIRY_MINUTES}. Running detections are never dropped,
+ * instead no further detection is started while all sessions are running.
+ * A finished detection older than {@link #MAXIMUM_AGE_MINUTES} is not
+ * joined but replaced, as the deadline is counted in days.
+ */
+public class ScanSessions {
+
+	static final int MAXIMUM_SIZE = Integer
+			.getInteger(ScanSessions.class.getName() + ".maximumSize", 8);
+
+	static final int EXPIRY_MINUTES = Integer.getInteger(
+			ScanSessions.class.getName() + ".expiryMinutes", 60);
+
+	static final int MAXIMUM_AGE_MINUTES = Integer.getInteger(
+			ScanSessions.class.getName() + ".maximumAgeMinutes", 24 * 60);
+
+	private static final class Session {
+
+		final String key;
+		final DetectionTask task;
+		long lastAccess;
+
+		Session(String key, DetectionTask task) {
+			this.key = key;
+			this.task = task;
+			touch();
+		}
+
+		void touch() {
+			lastAccess = System.currentTimeMillis();
+		}
+	}
+
+	private final ExecutorService executor;
+	private final int maximumSize;
+	private final long expiryMillis;
+	private final long maximumAgeMillis;
+
+	// Access ordered, the least recently used session first
+	private final Map<String, Session> sessions = new LinkedHashMap<>(16,
+			0.75f, true);
+	private long lastId;
+
+	public ScanSessions(ExecutorService executor) {
+		this(executor, MAXIMUM_SIZE, TimeUnit.MINUTES.toMillis(EXPIRY_MINUTES),
+				TimeUnit.MINUTES.toMillis(MAXIMUM_AGE_MINUTES));
+	}
+
+	ScanSessions(ExecutorService executor, int maximumSize,
+			long expiryMillis, long maximumAgeMillis) {
+		this.executor = executor;
+		this.maximumSize = Math.max(maximumSize, 1);
+		this.expiryMillis = expiryMillis;
+		this.maximumAgeMillis = maximumAgeMillis;
+	}
+
+	/**
+	 * Joins the detection with the given key or submits the given task as a
+	 * new one. Cancelled and failed detections are never joined.
+	 *
+	 * @param rescan
+	 *            replaces a finished detection with the same key
+	 * @return the detection to show to the user or null, if all sessions
+	 *         are running
+	 */
+	public synchronized DetectionTask start(String key, DetectionTask task,
+			boolean rescan) {
+		// Makes room for a new session, if there is none with the key yet.
+		evict(sessions.containsKey(key) ? 0 : 1);
+
+		Session existing = sessions.get(key);
+		if (existing != null) {
+			DetectionTask.State state = existing.task.getState();
+			boolean usable = state != DetectionTask.State.CANCELLED
+					&& state != DetectionTask.State.FAILED;
+			boolean running = !existing.task.isDone();
+			if (usable && (running || !rescan && !isOutdated(existing.task))) {
+				existing.touch();
+				return existing.task;
+			}
+		} else if (sessions.size() >= maximumSize) {
+			return null;
+		}
+
+		task.setId(Long.toString(++lastId, 36));
+		sessions.put(key, new Session(key, task));
+		executor.submit(task);
+		evict();
+		return task;
+	}
+
+	/**
+	 * @return the finished detection with the given key or null, if there
+	 *         is none
+	 */
+	public synchronized DetectionTask getFinished(String key) {
+		Session session = sessions.get(key);
+		if (session == null
+				|| session.task.getState() != DetectionTask.State.FINISHED)
+			return null;
+		return session.task;
+	}
+
+	private boolean isOutdated(DetectionTask task) {
+		return task.getEndTime() != 0 && System.currentTimeMillis()
+				- task.getEndTime() > maximumAgeMillis;
+	}
+
+	/**
+	 * Adds a finished detection, e.g. restored from a snapshot.
+	 */
+	public synchronized void restore(String key, DetectionTask task) {
+		evict();
+		sessions.put(key, new Session(key, task));
+		evict();
+	}
+
+	/**
+	 * @return the detection with the given id or null, if it doesn't exist
+	 *         (anymore)
+	 */
+	public synchronized DetectionTask get(String id) {
+		evict();
+		if (id == null)
+			return null;
+
+		String key = null;
+		for (Session session : sessions.values()) {
+			if (id.equals(session.task.getId())) {
+				key = session.key;
+				break;
+			}
+		}
+		if (key == null)
+			return null;
+
+		// Getting it by key marks the session as recently used.
+		Session session = sessions.get(key);
+		session.touch();
+		return session.task;
+	}
+
+	/**
+	 * @return the number of items visited by the most recently used finished
+	 *         detection or -1, if there is none
+	 */
+	public synchronized int getExpectedItems() {
+		int expectedItems = -1;
+		for (Session session : sessions.values()) {
+			if (session.task.getState() == DetectionTask.State.FINISHED)
+				expectedItems = session.task.getItemsVisited();
+		}
+		return expectedItems;
+	}
+
+	public synchronized List<DetectionTask> getAll() {
+		List<DetectionTask> tasks = new ArrayList<>();
+		for (Session session : sessions.values())
+			tasks.add(session.task);
+		return tasks;
+	}
+
+	public synchronized int size() {
+		return sessions.size();
+	}
+
+	public synchronized void cancelAll() {
+		for (Session session : sessions.values())
+			session.task.cancel();
+		sessions.clear();
+	}
+
+	private void evict() {
+		evict(0);
+	}
+
+	/**
+	 * Drops expired finished sessions and the least recently used finished
+	 * ones beyond the maximum size.
+	 *
+	 * @param reserved
+	 *            number of sessions to make room for
+	 */
+	private void evict(int reserved) {
+		long expiry = System.currentTimeMillis() - expiryMillis;
+		int excess = sessions.size() + reserved - maximumSize;
+		Iterator<Session> iterator = sessions.values().iterator();
+		while (iterator.hasNext()) {
+			Session session = iterator.next();
+			if (!session.task.isDone())
+				continue;
+			if (excess > 0 || session.lastAccess < expiry) {
+				iterator.remove();
+				excess--;
+			}
+		}
+	}
+
+}
@@ -0,0 +1,212 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 Jochen A. Fuerbacher, 1&1 Telecommunication SE
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.einsundeins.jenkins.plugins.failedjobdeactivator;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Stores the results of finished detections below JENKINS_HOME, so they can
+ * be shown and handled after a restart without scanning again. A snapshot
+ * only holds full names and primitive values, the jobs are looked up by
+ * name when needed.
+ */
+public class ScanSnapshots {
+
+	private static final Logger logger = Logger
+			.getLogger(ScanSnapshots.class.getName());
+
+	/**
+	 * Number of snapshots kept, older ones are deleted.
+	 */
+	static final int KEEP = Integer
+			.getInteger(ScanSnapshots.class.getName() + ".keep", 3);
+
+	/**
+	 * Session id which refers to the latest snapshot.
+	 */
+	public static final String LATEST = "latest";
+
+	private static final String ID_PREFIX = "snapshot-";
+	private static final String SUFFIX = ".bin";
+
+	private static final int MAGIC = 0x464a4453;
+	private static final int VERSION = 1;
+
+	private final File directory;
+
+	public ScanSnapshots(File directory) {
+		this.directory = directory;
+	}
+
+	/**
+	 * Writes the result of a finished detection and deletes the oldest
+	 * snapshots beyond {@link #KEEP}.
+	 */
+	public synchronized void write(DetectionTask task) throws IOException {
+		ResultTable table = task.getResultTable();
+		if (table == null)
+			return;
+
+		if (!directory.isDirectory() && !directory.mkdirs())
+			throw new IOException("Cannot create " + directory);
+
+		long created = System.currentTimeMillis();
+		File file = new File(directory, created + SUFFIX);
+		File tmp = new File(directory, file.getName() + ".tmp");
+		try (OutputStream out = Files.newOutputStream(tmp.toPath());
+				DataOutputStream data = new DataOutputStream(
+						new BufferedOutputStream(out))) {
+			data.writeInt(MAGIC);
+			data.writeInt(VERSION);
+			data.writeLong(created);
+			data.writeBoolean(task.getCheckFailureCauses());
+			data.writeBoolean(task.getCheckUsers());
+			data.writeBoolean(task.getMeasureDiskUsage());
+			data.writeInt(table.size());
+			for (int i = 0; i < table.size(); i++) {
+				data.writeUTF(table.getFullName(i));
+				data.writeLong(table.getLastSuccessfulBuild(i));
+				data.writeLong(table.getLastBuild(i));
+				data.writeByte(table.getStatus(i));
+				data.writeLong(table.getBytes(i));
+			}
+		}
+		Files.move(tmp.toPath(), file.toPath(),
+				StandardCopyOption.REPLACE_EXISTING,
+				StandardCopyOption.ATOMIC_MOVE);
+
+		List<File> snapshots = list();
+		for (int i = 0; i < snapshots.size() - KEEP; i++) {
+			if (!snapshots.get(i).delete())
+				logger.log(Level.WARNING,
+						"Failed to delete snapshot " + snapshots.get(i));
+		}
+	}
+
+	/**
+	 * Restores a finished detection from a snapshot.
+	 */
+	public DetectionTask read(File file) throws IOException {
+		try (InputStream in = Files.newInputStream(file.toPath());
+				DataInputStream data = new DataInputStream(
+						new BufferedInputStream(in))) {
+			if (data.readInt() != MAGIC)
+				throw new IOException("Unknown snapshot " + file);
+			if (data.readInt() != VERSION)
+				throw new IOException("Unknown snapshot " + file);
+
+			long created = data.readLong();
+			boolean checkFailureCauses = data.readBoolean();
+			boolean checkUsers = data.readBoolean();
+			boolean measureDiskUsage = data.readBoolean();
+			int count = data.readInt();
+			ResultTable.Builder rows = new ResultTable.Builder();
+			for (int i = 0; i < count; i++) {
+				String fullName = data.readUTF();
+				long lastSuccessfulBuild = data.readLong();
+				long lastBuild = data.readLong();
+				int status = data.readByte();
+				long bytes = data.readLong();
+				rows.add(fullName, lastSuccessfulBuild, lastBuild, status,
+						bytes);
+			}
+
+			DetectionTask task = new DetectionTask(rows.build(), created);
+			task.setId(getId(file));
+			task.setColumns(checkFailureCauses, checkUsers);
+			task.setMeasureDiskUsage(measureDiskUsage);
+			return task;
+		}
+	}
+
+	/**
+	 * @return the snapshot with the given session id, {@link #LATEST} for
+	 *         the latest one, or null if there is none
+	 */
+	public synchronized File find(String id) {
+		List<File> snapshots = list();
+		if (LATEST.equals(id))
+			return snapshots.isEmpty() ? null
+					: snapshots.get(snapshots.size() - 1);
+
+		for (File snapshot : snapshots) {
+			if (getId(snapshot).equals(id))
+				return snapshot;
+		}
+		return null;
+	}
+
+	/**
+	 * @return the session id of a detection restored from the given file
+	 */
+	public static String getId(File snapshot) {
+		String name = snapshot.getName();
+		return ID_PREFIX + name.substring(0, name.length() - SUFFIX.length());
+	}
+
+	/**
+	 * @return the creation time of the given snapshot
+	 */
+	public static long getCreated(File snapshot) {
+		String name = snapshot.getName();
+		try {
+			return Long.parseLong(
+					name.substring(0, name.length() - SUFFIX.length()));
+		} catch (NumberFormatException e) {
+			return 0;
+		}
+	}
+
+	/**
+	 * @return the snapshots, the oldest first
+	 */
+	private List<File> list() {
+		File[] files = directory.listFiles();
+		List<File> snapshots = new ArrayList<>();
+		if (files == null)
+			return snapshots;
+
+		Arrays.sort(files);
+		for (File file : files) {
+			if (file.getName().endsWith(SUFFIX) && getCreated(file) > 0)
+				snapshots.add(file);
+		}
+		return snapshots;
+	}
+
+}
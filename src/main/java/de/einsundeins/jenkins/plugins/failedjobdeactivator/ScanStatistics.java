@@ -0,0 +1,148 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 Jochen A. Fuerbacher, 1&1 Telecommunication SE
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.einsundeins.jenkins.plugins.failedjobdeactivator;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Where the time of a single detection went. The phases are summed up over
+ * all threads, so in a parallel detection they may add up to more than the
+ * total time.
+ */
+public class ScanStatistics {
+
+	public enum Phase {
+		/**
+		 * Getting the items of the item groups.
+		 */
+		WALK,
+		/**
+		 * Checking the item type and the cheap criteria, e.g. the name.
+		 */
+		FILTER,
+		/**
+		 * Criteria deciding from build records or files, e.g. staleness.
+		 */
+		STALENESS,
+		/**
+		 * Looking up the failure causes and config editors.
+		 */
+		ENRICHMENT,
+		/**
+		 * Measuring the disk usage of the detected jobs.
+		 */
+		DISK_USAGE
+	}
+
+	/**
+	 * Rejection of items which are no top level items.
+	 */
+	public static final String REJECTED_NOT_TOP_LEVEL = "notTopLevelItem";
+
+	/**
+	 * Rejection of items which are no jobs.
+	 */
+	public static final String REJECTED_NOT_JOB = "notJob";
+
+	private final AtomicLongArray phaseNanos = new AtomicLongArray(
+			Phase.values().length);
+	private final ConcurrentMap<String, AtomicInteger> rejections = new ConcurrentHashMap<>();
+	private final long started = System.nanoTime();
+	private volatile long totalNanos = -1;
+	private volatile int itemsVisited;
+	private volatile int jobsMatched;
+	private volatile int buildsLoaded;
+
+	void addTime(Phase phase, long nanos) {
+		phaseNanos.addAndGet(phase.ordinal(), nanos);
+	}
+
+	/**
+	 * Counts an item rejected by a rule, e.g. by a criterion.
+	 */
+	void rejected(String rule) {
+		AtomicInteger count = rejections.get(rule);
+		if (count == null) {
+			AtomicInteger newCount = new AtomicInteger();
+			count = rejections.putIfAbsent(rule, newCount);
+			if (count == null)
+				count = newCount;
+		}
+		count.incrementAndGet();
+	}
+
+	/**
+	 * Stops the clock and takes the counters of the scanner.
+	 */
+	void finish(JobScanner scanner) {
+		itemsVisited = scanner.getItemsVisited();
+		jobsMatched = scanner.getJobsMatched();
+		buildsLoaded = scanner.getBuildsLoaded();
+		totalNanos = System.nanoTime() - started;
+	}
+
+	public boolean isFinished() {
+		return totalNanos != -1;
+	}
+
+	public long getTotalMillis() {
+		long total = totalNanos;
+		return TimeUnit.NANOSECONDS
+				.toMillis(total == -1 ? System.nanoTime() - started : total);
+	}
+
+	public long getMillis(Phase phase) {
+		return TimeUnit.NANOSECONDS
+				.toMillis(phaseNanos.get(phase.ordinal()));
+	}
+
+	public int getItemsVisited() {
+		return itemsVisited;
+	}
+
+	public int getJobsMatched() {
+		return jobsMatched;
+	}
+
+	public int getBuildsLoaded() {
+		return buildsLoaded;
+	}
+
+	/**
+	 * @return the number of rejected items by rule, sorted by rule
+	 */
+	public Map<String, Integer> getRejections() {
+		Map<String, Integer> result = new TreeMap<>();
+		for (Map.Entry<String, AtomicInteger> entry : rejections.entrySet())
+			result.put(entry.getKey(), entry.getValue().get());
+		return result;
+	}
+
+}
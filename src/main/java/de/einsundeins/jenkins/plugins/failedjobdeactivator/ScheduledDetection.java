@@ -0,0 +1,155 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 Jochen A. Fuerbacher, 1&1 Telecommunication SE
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.einsundeins.jenkins.plugins.failedjobdeactivator;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.acegisecurity.context.SecurityContext;
+import org.acegisecurity.context.SecurityContextHolder;
+
+import hudson.Extension;
+import hudson.model.AsyncPeriodicWork;
+import hudson.model.Item;
+import hudson.model.Job;
+import hudson.model.TaskListener;
+import hudson.security.ACL;
+import jenkins.model.Jenkins;
+
+/**
+ * Continues the sweep of the {@link DetectionSchedule} every minute. Each
+ * run checks at most a slice of items within a time budget and stores the
+ * cursor, so a sweep over a large instance is spread over the configured
+ * time window.
+ */
+@Extension
+public class ScheduledDetection extends AsyncPeriodicWork {
+
+	public ScheduledDetection() {
+		super("FailedJobDeactivator scheduled detection");
+	}
+
+	@Override
+	public long getRecurrencePeriod() {
+		return MIN;
+	}
+
+	@Override
+	protected void execute(TaskListener listener)
+			throws IOException, InterruptedException {
+		Jenkins jenkins = Jenkins.getInstance();
+		if (jenkins == null)
+			return;
+
+		FailedJobDeactivatorModel model = jenkins
+				.getPlugin(FailedJobDeactivatorModel.class);
+		DetectionSchedule schedule = model == null ? null
+				: model.getDetectionSchedule();
+		if (schedule == null)
+			return;
+
+		SecurityContext oldContext = ACL.impersonate(ACL.SYSTEM);
+		try {
+			runSlice(jenkins, schedule, listener);
+		} finally {
+			SecurityContextHolder.setContext(oldContext);
+		}
+	}
+
+	/**
+	 * Checks the next slice of items, if a sweep is due.
+	 */
+	static void runSlice(Jenkins jenkins, DetectionSchedule schedule,
+			TaskListener listener) throws IOException {
+		List<String> result;
+		JobScanner scanner;
+		synchronized (schedule) {
+			long start = System.currentTimeMillis();
+			if (!schedule.isSweepDue(start))
+				return;
+			if (!schedule.isSweepRunning()) {
+				schedule.startSweep(start);
+				listener.getLogger().println("Started sweep");
+			}
+
+			scanner = schedule.createScanner();
+			scanner.prepare();
+			ItemWalker walker = new ItemWalker(jenkins, scanner,
+					schedule.getCursor());
+			long deadline = start + schedule.getSliceMillis();
+			int checked = 0;
+			while (checked < schedule.getSliceSize()
+					&& System.currentTimeMillis() < deadline
+					&& walker.hasNext()) {
+				Item item = walker.next();
+				schedule.advance(item.getFullName(),
+						scanner.checkItem(item));
+				checked++;
+			}
+			listener.getLogger().println("Checked " + checked
+					+ " items up to " + schedule.getCursor());
+
+			if (walker.hasNext()) {
+				schedule.save();
+				return;
+			}
+
+			schedule.finishSweep(System.currentTimeMillis());
+			schedule.save();
+			result = schedule.getLastResult();
+			listener.getLogger().println("Finished sweep of "
+					+ schedule.getLastSweepItems() + " items, detected "
+					+ result.size() + " jobs");
+			if (!schedule.isAutoDisable())
+				return;
+		}
+
+		disable(result, scanner, listener);
+	}
+
+	/**
+	 * Disables the detected jobs which are still stale, as they may have
+	 * been built since they were checked.
+	 */
+	private static void disable(List<String> fullNames, JobScanner scanner,
+			TaskListener listener) {
+		scanner.prepare();
+		Map<Job<?, ?>, String> jobs = new HashMap<>();
+		for (String fullName : fullNames) {
+			Job<?, ?> job = Util.getJobByName(fullName);
+			if (job != null && Util.isInstanceOfAbstractProject(job)
+					&& scanner.checkItem(job))
+				jobs.put(job, Constants.ACTION_DISABLE);
+		}
+
+		JobHandling handling = new JobHandling(jobs,
+				JobHandling.DEFAULT_PARALLELISM);
+		handling.run();
+		listener.getLogger().println("Disabled " + (handling.getCompleted()
+				- handling.getFailed()) + " of " + jobs.size() + " jobs");
+	}
+
+}
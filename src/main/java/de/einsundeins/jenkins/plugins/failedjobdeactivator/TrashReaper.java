@@ -0,0 +1,236 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 Jochen A. Fuerbacher, 1&1 Telecommunication SE
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.einsundeins.jenkins.plugins.failedjobdeactivator;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+
+import hudson.Extension;
+import hudson.model.AsyncPeriodicWork;
+import hudson.model.TaskListener;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+
+/**
+ * Reclaims the disk space of jobs in the {@link JobTrash}, once they have
+ * been there longer than the retention time. The build directories are
+ * deleted in parallel by low priority threads, limited to a number of files
+ * per second.
+ */
+@Extension
+public class TrashReaper extends AsyncPeriodicWork {
+
+	/**
+	 * Hours a job stays in the trash before it is deleted.
+	 */
+	static final long RETENTION_HOURS = Long
+			.getLong(TrashReaper.class.getName() + ".retentionHours", 24);
+
+	/**
+	 * Maximum number of files deleted per second.
+	 */
+	static final int FILES_PER_SECOND = Integer
+			.getInteger(TrashReaper.class.getName() + ".filesPerSecond", 500);
+
+	/**
+	 * Number of threads deleting at the same time.
+	 */
+	static final int THREADS = Integer
+			.getInteger(TrashReaper.class.getName() + ".threads", 2);
+
+	public TrashReaper() {
+		super("FailedJobDeactivator trash reaper");
+	}
+
+	@Override
+	public long getRecurrencePeriod() {
+		return HOUR;
+	}
+
+	@Override
+	protected void execute(TaskListener listener)
+			throws IOException, InterruptedException {
+		File trashDir = JobTrash.getTrashDir();
+		if (trashDir == null || !trashDir.isDirectory())
+			return;
+
+		File[] entries = trashDir.listFiles();
+		if (entries == null)
+			return;
+
+		long expiry = System.currentTimeMillis()
+				- TimeUnit.HOURS.toMillis(RETENTION_HOURS);
+		RateLimiter rateLimiter = new RateLimiter(FILES_PER_SECOND);
+		ExecutorService executor = Executors.newFixedThreadPool(THREADS,
+				new LowPriorityThreadFactory());
+		try {
+			for (File entry : entries) {
+				if (JobTrash.getTrashedAt(entry) > expiry)
+					continue;
+
+				long start = System.currentTimeMillis();
+				reap(entry.toPath(), executor, rateLimiter);
+				listener.getLogger().println("Deleted " + entry + " in "
+						+ (System.currentTimeMillis() - start) + " ms");
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Deletes the builds of a trashed job in parallel and then the rest of
+	 * it.
+	 */
+	private void reap(Path entry, ExecutorService executor,
+			final RateLimiter rateLimiter)
+			throws IOException, InterruptedException {
+		List<Future<?>> futures = new ArrayList<>();
+
+		File[] builds = entry.resolve("builds").toFile().listFiles();
+		if (builds != null) {
+			for (final File build : builds) {
+				futures.add(executor.submit(new Callable<Void>() {
+					@Override
+					public Void call()
+							throws IOException, InterruptedException {
+						deleteTree(build.toPath(), rateLimiter);
+						return null;
+					}
+				}));
+			}
+		}
+
+		for (Future<?> future : futures) {
+			try {
+				future.get();
+			} catch (ExecutionException e) {
+				logger.log(Level.WARNING, "Failed to delete a build of "
+						+ entry, e.getCause());
+			}
+		}
+
+		deleteTree(entry, rateLimiter);
+	}
+
+	private static void deleteTree(Path root, final RateLimiter rateLimiter)
+			throws IOException, InterruptedException {
+		if (!Files.exists(root, LinkOption.NOFOLLOW_LINKS))
+			return;
+
+		final InterruptedException[] interrupted = new InterruptedException[1];
+		Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+			@Override
+			public FileVisitResult visitFile(Path file,
+					BasicFileAttributes attrs) throws IOException {
+				if (!acquire())
+					return FileVisitResult.TERMINATE;
+				Files.deleteIfExists(file);
+				return FileVisitResult.CONTINUE;
+			}
+
+			@Override
+			public FileVisitResult postVisitDirectory(Path dir,
+					IOException e) throws IOException {
+				if (e != null)
+					throw e;
+				if (!acquire())
+					return FileVisitResult.TERMINATE;
+				Files.deleteIfExists(dir);
+				return FileVisitResult.CONTINUE;
+			}
+
+			private boolean acquire() {
+				try {
+					rateLimiter.acquire();
+					return true;
+				} catch (InterruptedException e) {
+					interrupted[0] = e;
+					return false;
+				}
+			}
+		});
+
+		if (interrupted[0] != null)
+			throw interrupted[0];
+	}
+
+	/**
+	 * Spreads permits evenly over time, shared by all deleting threads.
+	 */
+	static class RateLimiter {
+
+		private final long intervalNanos;
+		private long next = System.nanoTime();
+
+		RateLimiter(int permitsPerSecond) {
+			this.intervalNanos = TimeUnit.SECONDS.toNanos(1)
+					/ Math.max(permitsPerSecond, 1);
+		}
+
+		void acquire() throws InterruptedException {
+			long wait;
+			synchronized (this) {
+				long now = System.nanoTime();
+				// Do not save up permits while idle.
+				if (next < now)
+					next = now;
+				wait = next - now;
+				next += intervalNanos;
+			}
+			if (wait > 0)
+				TimeUnit.NANOSECONDS.sleep(wait);
+		}
+	}
+
+	private static class LowPriorityThreadFactory implements ThreadFactory {
+
+		private final ThreadFactory delegate = new NamingThreadFactory(
+				new DaemonThreadFactory(), "FailedJobDeactivator trash reaper");
+
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread thread = delegate.newThread(r);
+			thread.setPriority(Thread.MIN_PRIORITY);
+			return thread;
+		}
+	}
+
+}
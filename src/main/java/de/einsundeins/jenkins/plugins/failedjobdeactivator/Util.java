@@ -23,15 +23,9 @@
  */
 package de.einsundeins.jenkins.plugins.failedjobdeactivator;
 
-import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.OutputStreamWriter;
-import java.io.Writer;
-import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
 import java.util.Iterator;
-import java.util.List;
 import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -39,11 +33,9 @@ import java.util.logging.Logger;
 import com.sonyericsson.jenkins.plugins.bfa.model.FailureCauseBuildAction;
 import com.sonyericsson.jenkins.plugins.bfa.model.FoundFailureCause;
 
-import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import hudson.Plugin;
 import hudson.PluginWrapper;
 import hudson.model.AbstractProject;
-import hudson.model.Item;
 import hudson.model.Job;
 import hudson.model.Run;
 import hudson.plugins.jobConfigHistory.ConfigInfo;
@@ -174,29 +166,35 @@ public class Util {
 		return null;
 	}
 
-	public static Job<?, ?> getJobByName(String jobName) {
+	/**
+	 * Looks up a job by its full name.
+	 */
+	public static Job<?, ?> getJobByName(String fullName) {
 		Jenkins jenkins = Jenkins.getInstance();
 		if (jenkins == null)
 			return null;
-		for (Item item : jenkins.getAllItems()) {
-			if (item.getName().equals(jobName)) {
-				Job<?, ?> job = (Job<?, ?>) item;
-				return job;
-			}
-		}
-		return null;
+		return jenkins.getItemByFullName(fullName, Job.class);
 	}
 
+	/**
+	 * Converts the submitted actions, keyed by the full name of the jobs.
+	 * Unknown jobs and ignored jobs are skipped.
+	 */
 	public static Map<Job<?, ?>, String> convertJsonToMap(JSONObject json) {
 		Map<Job<?, ?>, String> map = new HashMap<>();
 		try {
 			Iterator<?> jobs = json.keys();
 			while (jobs.hasNext()) {
-				String jobName = (String) jobs.next();
-				String action = (String) json.get(jobName);
-				if (!action.equals("ignore")) {
-					map.put(getJobByName(jobName), action);
-				}
+				String fullName = (String) jobs.next();
+				Object action = json.get(fullName);
+				if (!Constants.ACTION_DISABLE.equals(action)
+						&& !Constants.ACTION_DELETE.equals(action)
+						&& !Constants.ACTION_PRUNE.equals(action))
+					continue;
+
+				Job<?, ?> job = getJobByName(fullName);
+				if (job != null)
+					map.put(job, (String) action);
 			}
 		} catch (Exception e) {
 			logger.log(Level.WARNING, "Failed to convert json to map. ", e);
@@ -205,46 +203,4 @@ public class Util {
 		return map;
 	}
 
-	@SuppressFBWarnings(value = {"NP_NULL_ON_SOME_PATH_EXCEPTION",
-			"OS_OPEN_STREAM"})
-	public static File generateCsv(List<Job<?, ?>> jobs) {
-		Jenkins jenkins = Jenkins.getInstance();
-		if (jenkins == null)
-			return null;
-		String filePath = jenkins.getRootDir() + "/" + Constants.CSV_FILENAME;
-		File file = new File(filePath);
-		Writer writer = null;
-		try {
-			StringBuilder stringBuilder = new StringBuilder();
-			writer = new OutputStreamWriter(new FileOutputStream(file),
-					StandardCharsets.UTF_8);
-			for (Job<?, ?> job : jobs) {
-				String jobname = job.getName();
-				String lastSuccessfulBuild = job
-						.getLastSuccessfulBuild() != null
-								? job.getLastSuccessfulBuild().getTime()
-										.toString()
-								: "";
-				String lastBuild = job.getLastBuild() != null
-						? job.getLastBuild().getTime().toString()
-						: "";
-				stringBuilder.append(jobname);
-				stringBuilder.append(",").append(lastSuccessfulBuild);
-				stringBuilder.append(",").append(lastBuild);
-
-				stringBuilder.append("\n");
-			}
-
-			writer.append(stringBuilder.toString());
-			writer.flush();
-		} catch (IOException e) {
-			try {
-				writer.close();
-			} catch (IOException e1) {
-			}
-		}
-
-		return file;
-	}
-
 }
@@ -0,0 +1,171 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 Jochen A. Fuerbacher, 1&1 Telecommunication SE
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+/*
+ * Loads the rows of the detected jobs table page by page from the
+ * detectedJobsJson endpoint. Configuration is read from the data attributes
+ * of the table.
+ */
+(function() {
+	var table = document.getElementById("showDetectedJobs");
+	if (!table)
+		return;
+
+	var config = table.dataset;
+	var state = {
+		start : 0,
+		sort : "",
+		order : "asc",
+		filter : ""
+	};
+
+	function text(value) {
+		return document.createTextNode(value);
+	}
+
+	function formatTime(millis) {
+		return millis < 0 ? "" : new Date(millis).toString();
+	}
+
+	function formatBytes(bytes) {
+		if (bytes < 0)
+			return "";
+		var units = [ "B", "KB", "MB", "GB", "TB" ];
+		var unit = 0;
+		while (bytes >= 1024 && unit < units.length - 1) {
+			bytes /= 1024;
+			unit++;
+		}
+		return (unit == 0 ? bytes : bytes.toFixed(1)) + " " + units[unit];
+	}
+
+	function addCell(row, content, align) {
+		var cell = row.insertCell(-1);
+		cell.align = align;
+		cell.appendChild(content);
+		return cell;
+	}
+
+	function link(href, label) {
+		var a = document.createElement("a");
+		a.href = href;
+		a.appendChild(text(label));
+		return a;
+	}
+
+	function option(value, label) {
+		var o = document.createElement("option");
+		o.value = value;
+		o.appendChild(text(label));
+		return o;
+	}
+
+	function addRow(job) {
+		var row = table.tBodies[0].insertRow(-1);
+		var jobUrl = config.rootUrl + "/" + job.url;
+		addCell(row, link(jobUrl, job.fullName), "left");
+		addCell(row, text(formatTime(job.lastSuccessfulBuild)), "right");
+		addCell(row, text(formatTime(job.lastBuild)), "right");
+		if (config.failureCauses == "true")
+			addCell(row, text(job.failureCauses), "left");
+		if (config.lastUser == "true")
+			addCell(row, link(jobUrl + "jobConfigHistory/", job.lastUser), "left");
+		if (config.diskUsage == "true")
+			addCell(row, text(formatBytes(job.bytes)), "right");
+
+		var select = document.createElement("select");
+		select.name = job.fullName;
+		if (job.canDisable)
+			select.appendChild(option("disable", config.labelDisable));
+		select.appendChild(option("ignore", config.labelIgnore));
+		select.appendChild(option("delete", config.labelDelete));
+		select.appendChild(option("prune", config.labelPrune));
+		select.value = "ignore";
+		addCell(row, select, "center");
+	}
+
+	function load(reset) {
+		if (reset) {
+			state.start = 0;
+			var body = table.tBodies[0];
+			while (body.rows.length > 0)
+				body.deleteRow(0);
+		}
+
+		var xhr = new XMLHttpRequest();
+		xhr.open("GET", "detectedJobsJson?session="
+				+ encodeURIComponent(config.session)
+				+ "&start=" + state.start
+				+ "&sort=" + encodeURIComponent(state.sort)
+				+ "&order=" + state.order
+				+ "&filter=" + encodeURIComponent(state.filter), true);
+		xhr.onreadystatechange = function() {
+			if (xhr.readyState != 4 || xhr.status != 200)
+				return;
+			var page = JSON.parse(xhr.responseText);
+			for (var i = 0; i < page.rows.length; i++)
+				addRow(page.rows[i]);
+			state.start += page.rows.length;
+
+			document.getElementById("matchingJobs").innerHTML = page.matching;
+			document.getElementById("loadMore").style.display =
+				state.start < page.matching ? "" : "none";
+		};
+		xhr.send();
+	}
+
+	var headers = table.querySelectorAll("th[data-sort]");
+	for (var i = 0; i < headers.length; i++) {
+		headers[i].style.cursor = "pointer";
+		headers[i].onclick = function() {
+			var sort = this.getAttribute("data-sort");
+			state.order = state.sort == sort && state.order == "asc" ? "desc" : "asc";
+			state.sort = sort;
+			load(true);
+		};
+	}
+
+	var filter = document.getElementById("jobFilter");
+	var timer = null;
+	filter.onkeyup = function() {
+		window.clearTimeout(timer);
+		timer = window.setTimeout(function() {
+			state.filter = filter.value;
+			// The bulk action applies to the filtered jobs.
+			document.getElementById("bulkFilter").value = filter.value;
+			load(true);
+		}, 300);
+	};
+	filter.onkeypress = function(e) {
+		// Do not submit the form.
+		return (e || window.event).keyCode != 13;
+	};
+
+	document.getElementById("loadMore").onclick = function() {
+		load(false);
+		return false;
+	};
+
+	load(true);
+})();
@@ -0,0 +1,65 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 Jochen A. Fuerbacher, 1&1 Telecommunication SE
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.einsundeins.jenkins.plugins.failedjobdeactivator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.Arrays;
+import java.util.HashSet;
+
+import org.junit.Test;
+
+public class DirtyJobsTest {
+
+	@Test
+	public void testChangesSinceSequence() {
+		DirtyJobs dirtyJobs = new DirtyJobs(10);
+		dirtyJobs.mark("a");
+		long sequence = dirtyJobs.getSequence();
+		dirtyJobs.mark("b");
+		dirtyJobs.mark("folder/c");
+		dirtyJobs.mark("b");
+
+		assertEquals(new HashSet<>(Arrays.asList("b", "folder/c")),
+				dirtyJobs.getChangedSince(sequence));
+		assertEquals(3, dirtyJobs.size());
+	}
+
+	@Test
+	public void testChangesAreForgottenBeyondMaximumSize() {
+		DirtyJobs dirtyJobs = new DirtyJobs(2);
+		dirtyJobs.mark("a");
+		long sequence = dirtyJobs.getSequence();
+		dirtyJobs.mark("b");
+		long recent = dirtyJobs.getSequence();
+		dirtyJobs.mark("c");
+
+		assertNull(dirtyJobs.getChangedSince(sequence));
+		assertEquals(new HashSet<>(Arrays.asList("c")),
+				dirtyJobs.getChangedSince(recent));
+		assertNull(dirtyJobs.getChangedSince(-1));
+	}
+
+}
@@ -0,0 +1,102 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 Jochen A. Fuerbacher, 1&1 Telecommunication SE
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.einsundeins.jenkins.plugins.failedjobdeactivator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.file.Files;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+
+import hudson.model.FreeStyleProject;
+
+public class DiskUsageTest {
+
+	@Rule
+	public JenkinsRule j = new JenkinsRule();
+
+	private static void addArtifact(File buildDir, int bytes)
+			throws Exception {
+		File archive = new File(buildDir, "archive");
+		assertTrue(archive.isDirectory() || archive.mkdirs());
+		Files.write(new File(archive, "artifact.bin").toPath(),
+				new byte[bytes]);
+	}
+
+	@Test
+	public void testBuildsAreMeasuredOnce() throws Exception {
+		FreeStyleProject job = j.createFreeStyleProject("job");
+		j.buildAndAssertSuccess(job);
+		j.buildAndAssertSuccess(job);
+
+		DiskUsageCache cache = new DiskUsageCache();
+		long before = cache.getSize(job);
+		assertTrue(before > 0);
+		// The job directory and the first build
+		assertEquals(2, cache.size());
+
+		// Finished builds are taken from the cache.
+		addArtifact(job.getBuildByNumber(1).getRootDir(), 4096);
+		assertEquals(before, cache.getSize(job));
+
+		// The last completed build is walked again.
+		addArtifact(job.getLastBuild().getRootDir(), 4096);
+		assertEquals(before + 4096, cache.getSize(job));
+
+		cache.clear();
+		assertEquals(before + 8192, cache.getSize(job));
+
+		j.buildAndAssertSuccess(job);
+		assertTrue(cache.getSize(job) > before + 8192);
+		assertEquals(4, cache.size());
+	}
+
+	@Test
+	public void testResultCanBeSortedByDiskUsage() throws Exception {
+		FreeStyleProject small = j.createFreeStyleProject("small");
+		j.buildAndAssertSuccess(small);
+		FreeStyleProject large = j.createFreeStyleProject("large");
+		j.buildAndAssertSuccess(large);
+		addArtifact(large.getLastBuild().getRootDir(), 1 << 20);
+
+		// A deadline of 0 days makes every job stale.
+		DetectionTask task = new DetectionTask(new JobScanner(0, -1, ""),
+				-1);
+		task.setDiskUsageStage(new DiskUsageStage(new DiskUsageCache()));
+		task.run();
+
+		assertEquals(DetectionTask.State.FINISHED, task.getState());
+		ResultTable table = task.getResultTable();
+		int[] rows = table.query(null, ResultTable.SORT_BYTES, true);
+		assertEquals("large", table.getFullName(rows[0]));
+		assertTrue(table.getBytes(rows[0]) > 1 << 20);
+		assertEquals(table.getBytes(rows[0]) + table.getBytes(rows[1]),
+				table.getTotalBytes());
+	}
+
+}
@@ -0,0 +1,131 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 Jochen A. Fuerbacher, 1&1 Telecommunication SE
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.einsundeins.jenkins.plugins.failedjobdeactivator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+
+import com.sonyericsson.jenkins.plugins.bfa.model.FailureCause;
+import com.sonyericsson.jenkins.plugins.bfa.model.FailureCauseBuildAction;
+import com.sonyericsson.jenkins.plugins.bfa.model.FoundFailureCause;
+
+import hudson.model.FreeStyleBuild;
+import hudson.model.FreeStyleProject;
+import hudson.model.Job;
+
+public class EnrichmentCacheTest {
+
+	@Rule
+	public JenkinsRule j = new JenkinsRule();
+
+	@Test
+	public void testValuesAreCachedPerBuild() throws Exception {
+		FreeStyleProject job = j.createFreeStyleProject();
+		FreeStyleBuild build = j.buildAndAssertSuccess(job);
+
+		EnrichmentCache cache = new EnrichmentCache();
+		assertNull(cache.getFailureCauses(job));
+
+		addFailureCause(build, "A Name");
+		assertNull(cache.getFailureCauses(job));
+		assertEquals(1, cache.size());
+
+		build = j.buildAndAssertSuccess(job);
+		addFailureCause(build, "A second Name");
+		assertEquals("A second Name\n", cache.getFailureCauses(job));
+
+		cache.clear();
+		assertEquals(0, cache.size());
+	}
+
+	@Test
+	public void testConfigChangeDropsValues() throws Exception {
+		FreeStyleProject job = j.createFreeStyleProject();
+		EnrichmentCache cache = EnrichmentCache.get();
+		cache.getLastUser(job);
+		assertEquals(1, cache.size());
+
+		job.setDescription("changed");
+		assertEquals(0, cache.size());
+	}
+
+	@Test
+	public void testSizeIsBounded() throws Exception {
+		EnrichmentCache cache = new EnrichmentCache(2, 1, TimeUnit.HOURS);
+		for (int i = 0; i < 5; i++)
+			cache.getLastUser(j.createFreeStyleProject());
+
+		assertTrue(cache.size() <= 2);
+	}
+
+	@Test
+	public void testEnrichmentStageFillsCache() throws Exception {
+		FreeStyleProject job = j.createFreeStyleProject();
+		addFailureCause(j.buildAndAssertSuccess(job), "A Name");
+
+		EnrichmentCache cache = new EnrichmentCache();
+		EnrichmentStage stage = new EnrichmentStage(cache, true, true);
+		stage.run(Collections.<Job<?, ?>>singletonList(job));
+
+		assertEquals(2, stage.getTotal());
+		assertEquals(2, stage.getCompleted());
+		assertEquals(0, stage.getTimedOut());
+		assertEquals(1, cache.size());
+		assertEquals("A Name\n", cache.getFailureCauses(job));
+	}
+
+	@Test
+	public void testTimedOutLookupsAreNotCached() throws Exception {
+		FreeStyleProject job = j.createFreeStyleProject();
+		addFailureCause(j.buildAndAssertSuccess(job), "A Name");
+
+		EnrichmentCache cache = new EnrichmentCache();
+		EnrichmentStage stage = new EnrichmentStage(cache, true, false);
+		stage.setTimeoutMillis(0);
+		stage.run(Collections.<Job<?, ?>>singletonList(job));
+
+		assertEquals(1, stage.getTimedOut());
+		assertEquals(EnrichmentStage.UNKNOWN, stage.getFailureCauses(job));
+		assertEquals(0, cache.size());
+		// The next detection looks it up again.
+		assertEquals("A Name\n", cache.getFailureCauses(job));
+	}
+
+	private static void addFailureCause(FreeStyleBuild build, String name)
+			throws Exception {
+		FailureCause cause = new FailureCause(name, "A description");
+		build.addAction(new FailureCauseBuildAction(
+				Collections.singletonList(new FoundFailureCause(cause))));
+		build.save();
+	}
+
+}
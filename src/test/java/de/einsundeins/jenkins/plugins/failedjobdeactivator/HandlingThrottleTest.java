@@ -0,0 +1,145 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 Jochen A. Fuerbacher, 1&1 Telecommunication SE
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.einsundeins.jenkins.plugins.failedjobdeactivator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+
+import org.junit.Test;
+
+import de.einsundeins.jenkins.plugins.failedjobdeactivator.HandlingThrottle.Health;
+
+public class HandlingThrottleTest {
+
+	/**
+	 * Returns the given samples one after another, the last one again and
+	 * again.
+	 */
+	private static class ScriptedThrottle extends HandlingThrottle {
+
+		private final Deque<Health> samples;
+		int sampled;
+
+		ScriptedThrottle(Health... samples) {
+			super(null, 100, 80, 1000);
+			this.samples = new ArrayDeque<>(Arrays.asList(samples));
+			setSampleMillis(1);
+		}
+
+		@Override
+		Health sample() {
+			sampled++;
+			return samples.size() > 1 ? samples.poll() : samples.peek();
+		}
+	}
+
+	private static Health queueLock(long millis) {
+		return new Health(millis, 50, -1);
+	}
+
+	private static Health heap(long percent) {
+		return new Health(1, percent, -1);
+	}
+
+	private static void acquireLater(HandlingThrottle throttle)
+			throws InterruptedException {
+		// Makes sure the throttle takes a new sample.
+		Thread.sleep(2);
+		throttle.acquire();
+	}
+
+	@Test
+	public void testSlowsDownAndRecovers() throws Exception {
+		ScriptedThrottle throttle = new ScriptedThrottle(queueLock(150),
+				queueLock(150), queueLock(1), queueLock(1));
+
+		acquireLater(throttle);
+		assertEquals(HandlingThrottle.MIN_DELAY_MILLIS,
+				throttle.getDelayMillis());
+		assertEquals(HandlingThrottle.Signal.QUEUE_LOCK, throttle.getReason());
+
+		acquireLater(throttle);
+		assertEquals(2 * HandlingThrottle.MIN_DELAY_MILLIS,
+				throttle.getDelayMillis());
+
+		acquireLater(throttle);
+		assertEquals(HandlingThrottle.MIN_DELAY_MILLIS,
+				throttle.getDelayMillis());
+		assertNull(throttle.getReason());
+
+		acquireLater(throttle);
+		assertEquals(0, throttle.getDelayMillis());
+		assertFalse(throttle.isPaused());
+	}
+
+	@Test
+	public void testPausesWhileCritical() throws Exception {
+		// Halfway between the limit of 80% and a full heap
+		ScriptedThrottle throttle = new ScriptedThrottle(heap(95), heap(95),
+				heap(50));
+
+		acquireLater(throttle);
+
+		assertEquals(3, throttle.sampled);
+		assertFalse(throttle.isPaused());
+		assertNull(throttle.getReason());
+		assertEquals(HandlingThrottle.MAX_DELAY_MILLIS / 2,
+				throttle.getDelayMillis());
+	}
+
+	@Test
+	public void testIgnoresUnknownSignals() throws Exception {
+		ScriptedThrottle throttle = new ScriptedThrottle(
+				new Health(-1, -1, -1));
+
+		acquireLater(throttle);
+
+		assertNull(throttle.getReason());
+		assertEquals(0, throttle.getDelayMillis());
+	}
+
+	@Test
+	public void testRequestLatencyIsTheRecentMedian() {
+		RequestLatencyFilter filter = new RequestLatencyFilter();
+		long now = System.currentTimeMillis();
+		filter.record(now - RequestLatencyFilter.MAX_AGE_MILLIS - 1, 5000);
+		for (int i = 1; i < RequestLatencyFilter.MIN_SAMPLES; i++)
+			filter.record(now, i * 10);
+		assertEquals(-1, filter.getMedianMillis(now));
+
+		filter.record(now, 1000);
+		assertEquals(30, filter.getMedianMillis(now));
+
+		// Old samples are overwritten.
+		for (int i = 0; i < RequestLatencyFilter.SAMPLES; i++)
+			filter.record(now, 7);
+		assertEquals(7, filter.getMedianMillis(now));
+	}
+
+}
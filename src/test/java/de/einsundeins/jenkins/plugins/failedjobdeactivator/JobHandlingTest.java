@@ -0,0 +1,157 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 Jochen A. Fuerbacher, 1&1 Telecommunication SE
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.einsundeins.jenkins.plugins.failedjobdeactivator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.FailureBuilder;
+import org.jvnet.hudson.test.JenkinsRule;
+
+import hudson.model.FreeStyleBuild;
+import hudson.model.FreeStyleProject;
+import hudson.model.Job;
+import hudson.model.Result;
+
+public class JobHandlingTest {
+
+	@Rule
+	public JenkinsRule j = new JenkinsRule();
+
+	@Test
+	public void testHandlingReportsEveryJob() throws Exception {
+		FreeStyleProject toDisable = j.createFreeStyleProject("toDisable");
+		FreeStyleProject toDelete = j.createFreeStyleProject("toDelete");
+		FreeStyleProject unknownAction = j
+				.createFreeStyleProject("unknownAction");
+
+		Map<Job<?, ?>, String> jobs = new HashMap<>();
+		jobs.put(toDisable, Constants.ACTION_DISABLE);
+		jobs.put(toDelete, Constants.ACTION_DELETE);
+		jobs.put(unknownAction, "rename");
+
+		JobHandling handling = new JobHandling(jobs, 2);
+		handling.run();
+
+		assertTrue(handling.isDone());
+		assertEquals(3, handling.getCompleted());
+		assertEquals(1, handling.getFailed());
+		assertTrue(toDisable.isDisabled());
+		assertNull(j.jenkins.getItem("toDelete"));
+
+		for (HandlingResult result : handling.getResults()) {
+			if (result.getFullName().equals("unknownAction"))
+				assertFalse(result.isSuccess());
+			else
+				assertTrue(result.getFailureReason(), result.isSuccess());
+		}
+	}
+
+	@Test
+	public void testFastDeleteMovesJobToTrash() throws Exception {
+		FreeStyleProject job = j.createFreeStyleProject("toTrash");
+		j.buildAndAssertSuccess(job);
+		File rootDir = job.getRootDir();
+
+		Map<Job<?, ?>, String> jobs = new HashMap<>();
+		jobs.put(job, Constants.ACTION_DELETE);
+
+		JobHandling handling = new JobHandling(jobs, 1);
+		handling.setFastDelete(true);
+		handling.run();
+
+		assertTrue(handling.getResults().get(0).isSuccess());
+		assertNull(j.jenkins.getItem("toTrash"));
+		assertFalse(rootDir.exists());
+
+		File[] trashed = JobTrash.getTrashDir().listFiles();
+		assertEquals(1, trashed.length);
+		assertTrue(new File(trashed[0], "builds/1/build.xml").isFile());
+	}
+
+	@Test
+	public void testPruneKeepsNewestBuilds() throws Exception {
+		FreeStyleProject job = j.createFreeStyleProject("toPrune");
+		for (int i = 0; i < 6; i++)
+			j.buildAndAssertSuccess(job);
+		job.getBuildByNumber(2).keepLog();
+
+		Map<Job<?, ?>, String> jobs = new HashMap<>();
+		jobs.put(job, Constants.ACTION_PRUNE);
+
+		BuildPruner pruner = new BuildPruner(2, -1);
+		pruner.setBatchSize(2);
+		JobHandling handling = new JobHandling(jobs, 1);
+		handling.setPruner(pruner);
+		handling.run();
+
+		HandlingResult result = handling.getResults().get(0);
+		assertTrue(result.getFailureReason(), result.isSuccess());
+		assertTrue(result.getBytesFreed() > 0);
+		assertEquals(result.getBytesFreed(), handling.getBytesFreed());
+
+		List<Integer> kept = new ArrayList<>();
+		for (FreeStyleBuild build : job.getBuilds())
+			kept.add(build.getNumber());
+		assertEquals(Arrays.asList(6, 5, 2), kept);
+		assertFalse(new File(job.getBuildDir(), "1").exists());
+	}
+
+	@Test
+	public void testPruneKeepsLastSuccessfulBuildNotInPermalinks()
+			throws Exception {
+		FreeStyleProject job = j.createFreeStyleProject("uncachedPermalink");
+		j.buildAndAssertSuccess(job);
+		job.getBuildersList().add(new FailureBuilder());
+		j.assertBuildStatus(Result.FAILURE, job.scheduleBuild2(0).get());
+		j.assertBuildStatus(Result.FAILURE, job.scheduleBuild2(0).get());
+		// The last successful build has not been cached yet.
+		Files.write(new File(job.getBuildDir(), "permalinks").toPath(),
+				"lastFailedBuild 3\n".getBytes(StandardCharsets.UTF_8));
+
+		Map<Job<?, ?>, String> jobs = new HashMap<>();
+		jobs.put(job, Constants.ACTION_PRUNE);
+		JobHandling handling = new JobHandling(jobs, 1);
+		handling.setPruner(new BuildPruner(1, -1));
+		handling.run();
+
+		assertTrue(handling.getResults().get(0).isSuccess());
+		assertTrue(job.getBuildByNumber(1) != null);
+		assertNull(job.getBuildByNumber(2));
+	}
+
+}
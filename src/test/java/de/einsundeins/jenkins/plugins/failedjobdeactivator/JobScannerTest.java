@@ -0,0 +1,299 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 Jochen A. Fuerbacher, 1&1 Telecommunication SE
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.einsundeins.jenkins.plugins.failedjobdeactivator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+import javax.management.ObjectName;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+import org.jvnet.hudson.test.MockFolder;
+import org.jvnet.hudson.test.TestExtension;
+
+import hudson.model.FreeStyleProject;
+import hudson.model.Job;
+import hudson.security.FullControlOnceLoggedInAuthorizationStrategy;
+
+public class JobScannerTest {
+
+	@Rule
+	public JenkinsRule j = new JenkinsRule();
+
+	private FreeStyleProject createNeverBuiltJob(String name)
+			throws Exception {
+		return makeNeverBuilt(j.createFreeStyleProject(name));
+	}
+
+	private FreeStyleProject makeNeverBuilt(FreeStyleProject job) {
+		File buildDir = job.getBuildDir();
+		assertTrue(buildDir.isDirectory() || buildDir.mkdirs());
+		assertTrue(buildDir.setLastModified(0));
+		return job;
+	}
+
+	@Test
+	public void testDetectionTaskPublishesDetectedJobs() throws Exception {
+		FreeStyleProject job = createNeverBuiltJob("neverBuilt");
+
+		DetectionTask task = new DetectionTask(new JobScanner(1, -1, ""),
+				-1);
+		task.run();
+
+		assertEquals(DetectionTask.State.FINISHED, task.getState());
+		assertEquals(1, task.getJobsMatched());
+		assertTrue(task.getDetectedJobs().contains(job));
+	}
+
+	@Test
+	public void testCancelledDetectionTaskPublishesNothing()
+			throws Exception {
+		createNeverBuiltJob("neverBuilt");
+
+		DetectionTask task = new DetectionTask(new JobScanner(1, -1, ""),
+				-1);
+		task.cancel();
+		task.run();
+
+		assertEquals(DetectionTask.State.CANCELLED, task.getState());
+		assertNull(task.getDetectedJobs());
+	}
+
+	@Test
+	public void testParallelDetectionHonoursLimit() throws Exception {
+		MockFolder folder = j.createFolder("folder");
+		for (int i = 0; i < 40; i++) {
+			makeNeverBuilt(folder.createProject(FreeStyleProject.class,
+					"nested" + i));
+			createNeverBuiltJob("topLevel" + i);
+		}
+
+		JobScanner scanner = new JobScanner(1, 7, "");
+		scanner.setParallel(true);
+		scanner.startDetection();
+		assertEquals(7, scanner.getDetectedJobs().size());
+
+		scanner = new JobScanner(1, -1, "");
+		scanner.setParallel(true);
+		scanner.startDetection();
+		assertEquals(80, scanner.getDetectedJobs().size());
+	}
+
+	@Test
+	public void testDetectionWalksFoldersAndStopsAtLimit() throws Exception {
+		MockFolder folder = j.createFolder("folder");
+		MockFolder subfolder = folder.createProject(MockFolder.class,
+				"subfolder");
+		FreeStyleProject nested = makeNeverBuilt(
+				subfolder.createProject(FreeStyleProject.class, "nested"));
+
+		JobScanner scanner = new JobScanner(1, -1, "");
+		scanner.startDetection();
+		assertEquals(1, scanner.getDetectedJobs().size());
+		assertTrue(scanner.getDetectedJobs().contains(nested));
+
+		createNeverBuiltJob("topLevel");
+		scanner = new JobScanner(1, 1, "");
+		scanner.startDetection();
+		assertEquals(1, scanner.getDetectedJobs().size());
+	}
+
+	@Test
+	public void testBuildMetadataLoadsFewerBuilds() throws Exception {
+		for (int i = 0; i < 5; i++) {
+			FreeStyleProject job = j.createFreeStyleProject("built" + i);
+			j.buildAndAssertSuccess(job);
+			j.buildAndAssertSuccess(job);
+		}
+		createNeverBuiltJob("neverBuilt");
+
+		// A deadline of 0 days makes every job stale.
+		JobScanner before = new JobScanner(0, -1, "");
+		before.setUseHealthIndex(false);
+		before.setUseBuildMetadata(false);
+		before.startDetection();
+
+		JobScanner after = new JobScanner(0, -1, "");
+		after.setUseHealthIndex(false);
+		after.startDetection();
+
+		assertEquals(6, before.getDetectedJobs().size());
+		assertEquals(before.getDetectedJobs(), after.getDetectedJobs());
+		assertTrue("Loaded " + after.getBuildsLoaded() + " builds instead of "
+				+ before.getBuildsLoaded(),
+				after.getBuildsLoaded() < before.getBuildsLoaded());
+	}
+
+	@Test
+	public void testHealthIndexAvoidsLoadingBuilds() throws Exception {
+		FreeStyleProject job = j.createFreeStyleProject("built");
+		j.buildAndAssertSuccess(job);
+		createNeverBuiltJob("neverBuilt");
+
+		JobHealthIndex index = JobHealthIndex.get();
+		assertTrue(index.get(job) != null);
+
+		JobScanner scanner = new JobScanner(0, -1, "");
+		scanner.startDetection();
+		assertEquals(2, scanner.getDetectedJobs().size());
+		assertEquals(0, scanner.getBuildsLoaded());
+
+		j.buildAndAssertSuccess(job);
+		assertEquals(job.getLastBuild().getTimeInMillis(),
+				index.get(job).getLastBuild());
+	}
+
+	@Test
+	public void testCheapCriteriaShortCircuit() throws Exception {
+		createNeverBuiltJob("selected");
+		FreeStyleProject disabled = createNeverBuiltJob("selectedDisabled");
+		disabled.disable();
+		createNeverBuiltJob("other");
+
+		JobScanner scanner = new JobScanner(1, -1, "selected.*");
+		scanner.setSkipDisabled(true);
+		scanner.startDetection();
+
+		assertEquals(1, scanner.getDetectedJobs().size());
+		assertEquals(Collections.singletonList("selected"),
+				ExpensiveCriterion.checked);
+	}
+
+	@Test
+	public void testStatisticsAreRecorded() throws Exception {
+		MockFolder folder = j.createFolder("folder");
+		makeNeverBuilt(folder.createProject(FreeStyleProject.class,
+				"selected"));
+		createNeverBuiltJob("other");
+
+		DetectionTask task = new DetectionTask(
+				new JobScanner(1, -1, ".*selected"), -1);
+		task.run();
+
+		ScanStatistics statistics = task.getScanner().getStatistics();
+		assertTrue(statistics.isFinished());
+		assertEquals(3, statistics.getItemsVisited());
+		assertEquals(1, statistics.getJobsMatched());
+		assertEquals(Integer.valueOf(1), statistics.getRejections()
+				.get(ScanStatistics.REJECTED_NOT_JOB));
+		assertEquals(Integer.valueOf(1), statistics.getRejections()
+				.get(JobScanner.SelectedCriterion.class.getSimpleName()));
+
+		ScanMetrics metrics = ScanMetrics.get();
+		assertSame(statistics, metrics.getLastScan());
+		assertEquals(1, metrics.getScans());
+		assertEquals(3, ManagementFactory.getPlatformMBeanServer()
+				.getAttribute(new ObjectName(ScanMetrics.OBJECT_NAME),
+						"LastItemsVisited"));
+	}
+
+	@Test
+	public void testIncrementalRescanChecksChangedJobsOnly() throws Exception {
+		for (int i = 0; i < 10; i++)
+			j.buildAndAssertSuccess(j.createFreeStyleProject("built" + i));
+		List<FreeStyleProject> neverBuilt = new ArrayList<>();
+		for (int i = 0; i < 5; i++)
+			neverBuilt.add(createNeverBuiltJob("neverBuilt" + i));
+
+		DetectionTask first = new DetectionTask(new JobScanner(1, -1, ""),
+				-1);
+		first.setDirtyJobs(DirtyJobs.get());
+		first.run();
+		assertEquals(5, first.getJobsMatched());
+		assertEquals(15, first.getItemsVisited());
+
+		j.buildAndAssertSuccess(neverBuilt.get(0));
+		neverBuilt.get(1).delete();
+		neverBuilt.get(2).renameTo("renamed");
+
+		DetectionTask second = new DetectionTask(new JobScanner(1, -1, ""),
+				-1);
+		second.setDirtyJobs(DirtyJobs.get());
+		second.setPrevious(first);
+		second.run();
+
+		assertEquals(DetectionTask.State.FINISHED, second.getState());
+		assertTrue(second.isIncremental());
+		// The changed jobs and the jobs without builds
+		assertEquals(4, second.getItemsVisited());
+		assertEquals(new HashSet<>(neverBuilt.subList(2, 5)),
+				new HashSet<>(second.getDetectedJobs()));
+
+		// Deleted and renamed jobs don't keep their previous rows.
+		ResultTable table = second.getResultTable();
+		assertEquals(3, table.size());
+		assertNull(table.getRow("neverBuilt1"));
+		assertNull(table.getRow("neverBuilt2"));
+		assertNotNull(table.getRow("renamed"));
+	}
+
+	@Test
+	public void testEndpointsRequireAdminister() throws Exception {
+		j.jenkins.setSecurityRealm(j.createDummySecurityRealm());
+		// Anonymous users may read, but not administer.
+		j.jenkins.setAuthorizationStrategy(
+				new FullControlOnceLoggedInAuthorizationStrategy());
+
+		JenkinsRule.WebClient webClient = j.createWebClient();
+		webClient.assertFails("plugin/failedJobDeactivator/progress", 403);
+		webClient.assertFails(
+				"plugin/failedJobDeactivator/detectedJobsJson", 403);
+		webClient.assertFails(
+				"plugin/failedJobDeactivator/handlingProgress", 403);
+	}
+
+	/**
+	 * Records the jobs it is asked about, which must only be those all
+	 * cheaper criteria accepted.
+	 */
+	@TestExtension("testCheapCriteriaShortCircuit")
+	public static class ExpensiveCriterion extends DetectionCriterion {
+
+		static final List<String> checked = new ArrayList<>();
+
+		@Override
+		public int getCost() {
+			return COST_ARTIFACTS;
+		}
+
+		@Override
+		public boolean accept(Job<?, ?> job, JobScanner scanner) {
+			checked.add(job.getFullName());
+			return true;
+		}
+	}
+
+}
@@ -0,0 +1,99 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 Jochen A. Fuerbacher, 1&1 Telecommunication SE
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.einsundeins.jenkins.plugins.failedjobdeactivator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import de.einsundeins.jenkins.plugins.failedjobdeactivator.JobSelector.Decision;
+
+public class JobSelectorTest {
+
+	@Test
+	public void testEmptySelectorSelectsEverything() {
+		JobSelector selector = new JobSelector("", null);
+
+		assertTrue(selector.isEmpty());
+		assertTrue(selector.matches("a/b/job"));
+		assertEquals(Decision.ACCEPT_ALL, selector.decide("a"));
+	}
+
+	@Test
+	public void testRegexMatchesFullName() {
+		JobSelector selector = JobSelector.forRegex("team-a/.*-build");
+
+		assertTrue(selector.matches("team-a/nightly-build"));
+		assertFalse(selector.matches("nightly-build"));
+		assertEquals(Decision.MATCH_EACH, selector.decide("team-a"));
+		assertEquals(Decision.REJECT_ALL, selector.decide("team-b"));
+	}
+
+	@Test
+	public void testGlob() {
+		JobSelector selector = new JobSelector("glob:*/deploy-*", null);
+
+		assertTrue(selector.matches("team-a/deploy-prod"));
+		assertFalse(selector.matches("team-a/sub/deploy-prod"));
+
+		selector = new JobSelector("glob:team-a/**", null);
+		assertTrue(selector.matches("team-a/sub/deploy-prod"));
+		assertEquals("\\Qa.b\\E[^/]", JobSelector.globToRegex("a.b?"));
+	}
+
+	@Test
+	public void testFolderRules() {
+		JobSelector selector = new JobSelector(
+				"folder:team-a\nfolder:team-b/", "folder:team-a/legacy");
+
+		assertTrue(selector.matches("team-a/job"));
+		assertTrue(selector.matches("team-b/sub/job"));
+		assertFalse(selector.matches("team-a/legacy/job"));
+		assertFalse(selector.matches("team-c/job"));
+
+		assertEquals(Decision.MATCH_EACH, selector.decide(""));
+		assertEquals(Decision.MATCH_EACH, selector.decide("team-a"));
+		assertEquals(Decision.ACCEPT_ALL, selector.decide("team-a/other"));
+		assertEquals(Decision.REJECT_ALL, selector.decide("team-a/legacy"));
+		assertEquals(Decision.ACCEPT_ALL, selector.decide("team-b"));
+		assertEquals(Decision.REJECT_ALL, selector.decide("team-c"));
+	}
+
+	@Test
+	public void testExcludeRegexPreventsAcceptAll() {
+		JobSelector selector = new JobSelector(null, ".*/tmp-.*");
+
+		assertFalse(selector.matches("team-a/tmp-job"));
+		assertTrue(selector.matches("team-a/job"));
+		assertEquals(Decision.MATCH_EACH, selector.decide("team-a"));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidRegex() {
+		new JobSelector("[", null);
+	}
+
+}
@@ -0,0 +1,178 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 Jochen A. Fuerbacher, 1&1 Telecommunication SE
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.einsundeins.jenkins.plugins.failedjobdeactivator;
+
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.jvnet.hudson.test.JenkinsRule;
+import org.jvnet.hudson.test.MockFolder;
+
+import hudson.model.FreeStyleProject;
+import hudson.model.Result;
+
+/**
+ * Generates a large instance: jobs in nested folders, whose build histories
+ * are written to disk as build records and loaded like after a restart.
+ */
+class LargeInstance {
+
+	/**
+	 * Days after which the generated jobs are stale.
+	 */
+	static final int DEADLINE_DAYS = 30;
+
+	private static final long DAY = Constants.DAYS_TO_64BIT_UNIXTIME;
+
+	enum History {
+		NEVER_BUILT, SUCCEEDED_LONG_AGO, SUCCEEDED_RECENTLY, ONLY_FAILED
+	}
+
+	private final JenkinsRule j;
+	private final long now = System.currentTimeMillis();
+	private final List<String> jobs = new ArrayList<>();
+	private final List<String> stale = new ArrayList<>();
+	private int teams;
+
+	LargeInstance(JenkinsRule j) {
+		this.j = j;
+	}
+
+	/**
+	 * Adds team folders with service folders, which contain the jobs.
+	 */
+	void addJobs(int count, int servicesPerTeam, int jobsPerService)
+			throws Exception {
+		int added = 0;
+		while (added < count) {
+			MockFolder team = j.createFolder("team-" + teams++);
+			for (int s = 0; s < servicesPerTeam && added < count; s++) {
+				MockFolder service = team.createProject(MockFolder.class,
+						"service-" + s);
+				for (int k = 0; k < jobsPerService && added < count; k++) {
+					addJob(service, "job-" + k);
+					added++;
+				}
+			}
+		}
+	}
+
+	private void addJob(MockFolder folder, String name) throws Exception {
+		FreeStyleProject job = folder.createProject(FreeStyleProject.class,
+				name);
+		History history = History.values()[jobs.size()
+				% History.values().length];
+		// Only half of the jobs have a permalinks file, like after an
+		// upgrade from a Jenkins version keeping symlinks.
+		writeBuilds(job, history, jobs.size() % 8 < 4);
+		job.doReload();
+
+		jobs.add(job.getFullName());
+		if (history != History.SUCCEEDED_RECENTLY)
+			stale.add(job.getFullName());
+	}
+
+	private void writeBuilds(FreeStyleProject job, History history,
+			boolean withPermalinks) throws IOException {
+		File buildDir = job.getBuildDir();
+		assertTrue(buildDir.isDirectory() || buildDir.mkdirs());
+
+		int lastBuild;
+		int lastSuccessfulBuild;
+		switch (history) {
+			case SUCCEEDED_LONG_AGO :
+				writeBuild(buildDir, 1, 200, Result.SUCCESS);
+				writeBuild(buildDir, 2, 190, Result.SUCCESS);
+				writeBuild(buildDir, 3, 10, Result.FAILURE);
+				lastBuild = 3;
+				lastSuccessfulBuild = 2;
+				break;
+			case SUCCEEDED_RECENTLY :
+				writeBuild(buildDir, 1, 50, Result.FAILURE);
+				writeBuild(buildDir, 2, 5, Result.SUCCESS);
+				lastBuild = 2;
+				lastSuccessfulBuild = 2;
+				break;
+			case ONLY_FAILED :
+				writeBuild(buildDir, 1, 100, Result.FAILURE);
+				writeBuild(buildDir, 2, 2, Result.FAILURE);
+				lastBuild = 2;
+				lastSuccessfulBuild = -1;
+				break;
+			default :
+				lastBuild = 0;
+				lastSuccessfulBuild = -1;
+		}
+
+		write(new File(job.getRootDir(), "nextBuildNumber"),
+				String.valueOf(lastBuild + 1));
+		if (withPermalinks && lastBuild > 0)
+			write(new File(buildDir, "permalinks"),
+					"lastSuccessfulBuild " + lastSuccessfulBuild
+							+ "\nlastBuild " + lastBuild + "\n");
+		assertTrue(buildDir.setLastModified(now - 400 * DAY));
+	}
+
+	private void writeBuild(File buildDir, int number, int daysAgo,
+			Result result) throws IOException {
+		File dir = new File(buildDir, String.valueOf(number));
+		assertTrue(dir.mkdirs());
+
+		long timestamp = now - daysAgo * DAY;
+		write(new File(dir, "build.xml"),
+				"<?xml version='1.0' encoding='UTF-8'?>\n<build>\n"
+				+ "  <timestamp>" + timestamp + "</timestamp>\n"
+				+ "  <startTime>" + timestamp + "</startTime>\n"
+				+ "  <result>" + result + "</result>\n"
+				+ "  <duration>1000</duration>\n"
+				+ "</build>\n");
+		assertTrue(dir.setLastModified(timestamp));
+	}
+
+	private static void write(File file, String content) throws IOException {
+		Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+	}
+
+	int size() {
+		return jobs.size();
+	}
+
+	/**
+	 * @return the full names of the jobs a detection with
+	 *         {@link #DEADLINE_DAYS} has to find, sorted
+	 */
+	List<String> getStaleJobs() {
+		List<String> sorted = new ArrayList<>(stale);
+		Collections.sort(sorted);
+		return sorted;
+	}
+
+}
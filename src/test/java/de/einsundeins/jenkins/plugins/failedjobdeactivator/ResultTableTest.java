@@ -0,0 +1,95 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 Jochen A. Fuerbacher, 1&1 Telecommunication SE
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.einsundeins.jenkins.plugins.failedjobdeactivator;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class ResultTableTest {
+
+	private static ResultTable createTable() {
+		return new ResultTable.Builder()
+				.add("folder/beta", 300, 400, ResultTable.STATUS_CAN_DISABLE)
+				.add("Alpha", -1, 100, 0)
+				.add("gamma", 200, 500, ResultTable.STATUS_CAN_DISABLE
+						| ResultTable.STATUS_DISABLED)
+				.build();
+	}
+
+	@Test
+	public void testQuery() {
+		ResultTable table = createTable();
+
+		assertArrayEquals(new int[]{0, 1, 2}, table.query(null, null, false));
+		assertArrayEquals(new int[]{2, 1, 0}, table.query(null, null, true));
+		assertArrayEquals(new int[]{1, 0, 2},
+				table.query("", ResultTable.SORT_NAME, false));
+		assertArrayEquals(new int[]{2, 0, 1},
+				table.query(null, ResultTable.SORT_LAST_BUILD, true));
+		assertArrayEquals(new int[]{1, 2, 0}, table
+				.query(null, ResultTable.SORT_LAST_SUCCESSFUL_BUILD, false));
+		assertArrayEquals(new int[]{2},
+				table.query(" AMM ", ResultTable.SORT_NAME, false));
+		assertArrayEquals(new int[]{0},
+				table.query("FOLDER/", ResultTable.SORT_NAME, false));
+	}
+
+	@Test
+	public void testGetRowByName() {
+		ResultTable table = createTable();
+
+		ResultTable.Row row = table.getRow("gamma");
+		assertEquals(200, row.getLastSuccessfulBuild());
+		assertEquals(500, row.getLastBuild());
+		assertTrue(row.canDisable());
+		assertTrue(row.isDisabled());
+
+		row = table.getRow("Alpha");
+		assertEquals(-1, row.getLastSuccessfulBuild());
+		assertFalse(row.canDisable());
+
+		assertNull(table.getRow("alpha"));
+		assertNull(table.getRow("delta"));
+		assertNull(ResultTable.empty().getRow("gamma"));
+	}
+
+	@Test
+	public void testNamesAreShared() {
+		ResultTable table1 = createTable();
+		ResultTable table2 = createTable();
+
+		assertSame(table1.getFullName(2), table2.getFullName(2));
+		assertSame(table1.getFullName(0),
+				new ResultTable.Builder()
+						.add(new String("folder/beta"), 0, 0, 0).build()
+						.getFullName(0));
+	}
+
+}
@@ -0,0 +1,216 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 Jochen A. Fuerbacher, 1&1 Telecommunication SE
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.einsundeins.jenkins.plugins.failedjobdeactivator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+
+import hudson.model.Job;
+import net.sf.json.JSONObject;
+
+/**
+ * Holds the detection and the handling on a large instance to budgets of
+ * time and loaded builds. The size and the budgets can be changed by system
+ * properties, e.g. to run it with more jobs before a release.
+ *
+ * <p>
+ * Only the loaded builds are checked by default. The time budgets depend on
+ * the machine, they are only checked if the system property
+ * {@code <class name>.timed} is true.
+ */
+public class ScalabilityTest {
+
+	private static final String PREFIX = ScalabilityTest.class.getName();
+
+	private static final boolean TIMED = Boolean.getBoolean(PREFIX + ".timed");
+
+	private static final int JOBS = Integer.getInteger(PREFIX + ".jobs",
+			TIMED ? 2000 : 400);
+
+	/**
+	 * Average milliseconds a job may take to be scanned.
+	 */
+	private static final int SCAN_MILLIS_PER_JOB = Integer
+			.getInteger(PREFIX + ".scanMillisPerJob", 5);
+
+	/**
+	 * Average milliseconds a job may take to be disabled.
+	 */
+	private static final int HANDLING_MILLIS_PER_JOB = Integer
+			.getInteger(PREFIX + ".handlingMillisPerJob", 50);
+
+	/**
+	 * How much slower a job may be scanned in a four times larger instance.
+	 * Linear growth keeps it close to 1, quadratic growth makes it about 4.
+	 */
+	private static final double GROWTH_TOLERANCE = 2.5;
+
+	private static final int SERVICES_PER_TEAM = 10;
+	private static final int JOBS_PER_SERVICE = 25;
+
+	@Rule
+	public JenkinsRule j = new JenkinsRule();
+
+	private static class Scan {
+
+		final List<String> detected = new ArrayList<>();
+		final int itemsVisited;
+		final int buildsLoaded;
+		final long millis;
+
+		Scan(JobScanner scanner, long millis) {
+			for (Job<?, ?> job : scanner.getDetectedJobs())
+				detected.add(job.getFullName());
+			Collections.sort(detected);
+			this.itemsVisited = scanner.getItemsVisited();
+			this.buildsLoaded = scanner.getBuildsLoaded();
+			this.millis = millis;
+		}
+	}
+
+	private static Scan scan(boolean useHealthIndex) {
+		JobScanner scanner = new JobScanner(LargeInstance.DEADLINE_DAYS, -1,
+				"");
+		scanner.setUseHealthIndex(useHealthIndex);
+		long start = System.nanoTime();
+		scanner.startDetection();
+		return new Scan(scanner,
+				TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+	}
+
+	/**
+	 * Scans an instance which has been scanned before, taking the fastest
+	 * of some runs to reduce the noise.
+	 */
+	private static Scan warmScan() {
+		Scan fastest = null;
+		for (int i = 0; i < 3; i++) {
+			Scan scan = scan(true);
+			if (fastest == null || scan.millis < fastest.millis)
+				fastest = scan;
+		}
+		return fastest;
+	}
+
+	@Test
+	public void testWarmScanLoadsNoBuilds() throws Exception {
+		LargeInstance instance = new LargeInstance(j);
+		instance.addJobs(JOBS, SERVICES_PER_TEAM, JOBS_PER_SERVICE);
+
+		// The first scan reads the times of the jobs the build directories
+		// don't decide into the health index, at most three builds per job.
+		Scan cold = scan(true);
+		assertEquals(instance.getStaleJobs(), cold.detected);
+		assertTrue("Loaded " + cold.buildsLoaded + " builds",
+				cold.buildsLoaded <= 3 * instance.size());
+
+		Scan warm = scan(true);
+		assertEquals(instance.getStaleJobs(), warm.detected);
+		assertEquals(0, warm.buildsLoaded);
+	}
+
+	@Test
+	public void testScanCostGrowsLinearly() throws Exception {
+		assumeTrue(TIMED);
+		LargeInstance instance = new LargeInstance(j);
+		instance.addJobs(JOBS / 4, SERVICES_PER_TEAM, JOBS_PER_SERVICE);
+
+		scan(true);
+		Scan small = warmScan();
+
+		instance.addJobs(JOBS - instance.size(), SERVICES_PER_TEAM,
+				JOBS_PER_SERVICE);
+		scan(true);
+		Scan large = warmScan();
+		assertEquals(instance.getStaleJobs(), large.detected);
+		assertEquals(0, large.buildsLoaded);
+
+		assertTrue("Scanning " + instance.size() + " jobs took "
+				+ large.millis + " ms",
+				large.millis <= (long) SCAN_MILLIS_PER_JOB * instance.size());
+
+		// Small instances are scanned too fast to be compared, so at least
+		// one millisecond per 100 items is assumed.
+		double smallCost = Math.max(small.millis, small.itemsVisited / 100)
+				/ (double) small.itemsVisited;
+		double largeCost = large.millis / (double) large.itemsVisited;
+		assertTrue("Cost per item grew from " + smallCost + " ms to "
+				+ largeCost + " ms",
+				largeCost <= smallCost * GROWTH_TOLERANCE);
+	}
+
+	@Test
+	public void testBuildMetadataFindsTheSameJobs() throws Exception {
+		LargeInstance instance = new LargeInstance(j);
+		instance.addJobs(JOBS / 4, SERVICES_PER_TEAM, JOBS_PER_SERVICE);
+
+		Scan scan = scan(false);
+		assertEquals(instance.getStaleJobs(), scan.detected);
+		assertTrue("Loaded " + scan.buildsLoaded + " builds",
+				scan.buildsLoaded <= 3 * instance.size());
+	}
+
+	@Test
+	public void testHandlingStaysInBudget() throws Exception {
+		LargeInstance instance = new LargeInstance(j);
+		instance.addJobs(JOBS / 4, SERVICES_PER_TEAM, JOBS_PER_SERVICE);
+
+		JobScanner scanner = new JobScanner(LargeInstance.DEADLINE_DAYS, -1,
+				"");
+		scanner.startDetection();
+
+		long start = System.nanoTime();
+		JSONObject submittedForm = new JSONObject();
+		for (String fullName : instance.getStaleJobs())
+			submittedForm.put(fullName, Constants.ACTION_DISABLE);
+		Map<Job<?, ?>, String> jobs = Util.convertJsonToMap(submittedForm);
+		assertEquals(instance.getStaleJobs().size(), jobs.size());
+
+		JobHandling handling = new JobHandling(jobs,
+				JobHandling.DEFAULT_PARALLELISM);
+		handling.setExpected(scanner.getResult());
+		handling.run();
+		long millis = TimeUnit.NANOSECONDS
+				.toMillis(System.nanoTime() - start);
+
+		assertEquals(jobs.size(), handling.getCompleted());
+		assertEquals(0, handling.getFailed());
+		if (TIMED)
+			assertTrue("Handling " + jobs.size() + " jobs took " + millis
+					+ " ms",
+					millis <= (long) HANDLING_MILLIS_PER_JOB * jobs.size());
+	}
+
+}
@@ -0,0 +1,169 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 Jochen A. Fuerbacher, 1&1 Telecommunication SE
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.einsundeins.jenkins.plugins.failedjobdeactivator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ScanSessionsTest {
+
+	private ExecutorService executor;
+	private final CountDownLatch blocker = new CountDownLatch(1);
+
+	@Before
+	public void blockExecutor() {
+		// Keeps all detections queued.
+		executor = Executors.newSingleThreadExecutor();
+		executor.submit(new Callable<Void>() {
+			@Override
+			public Void call() throws InterruptedException {
+				blocker.await();
+				return null;
+			}
+		});
+	}
+
+	@After
+	public void shutdownExecutor() {
+		blocker.countDown();
+		executor.shutdownNow();
+	}
+
+	private static DetectionTask newTask() {
+		return new DetectionTask(new JobScanner(1, -1, ""), -1);
+	}
+
+	private static DetectionTask finishedTask(String id, long finished) {
+		DetectionTask task = new DetectionTask(ResultTable.empty(), finished);
+		task.setId(id);
+		return task;
+	}
+
+	@Test
+	public void testIdenticalRequestsShareOneDetection() {
+		ScanSessions sessions = new ScanSessions(executor);
+
+		DetectionTask first = sessions.start("a", newTask(), false);
+		assertSame(first, sessions.start("a", newTask(), false));
+		// A running detection is shared even if a rescan is requested.
+		assertSame(first, sessions.start("a", newTask(), true));
+
+		DetectionTask other = sessions.start("b", newTask(), false);
+		assertEquals(2, sessions.size());
+		assertSame(first, sessions.get(first.getId()));
+		assertSame(other, sessions.get(other.getId()));
+		assertNull(sessions.get("unknown"));
+	}
+
+	@Test
+	public void testCancelledDetectionIsReplaced() {
+		ScanSessions sessions = new ScanSessions(executor);
+
+		DetectionTask first = sessions.start("a", newTask(), false);
+		first.cancel();
+		DetectionTask second = sessions.start("a", newTask(), false);
+
+		assertEquals(DetectionTask.State.QUEUED, second.getState());
+		assertNull(sessions.get(first.getId()));
+		assertSame(second, sessions.get(second.getId()));
+	}
+
+	@Test
+	public void testLeastRecentlyUsedFinishedIsEvicted() {
+		ScanSessions sessions = new ScanSessions(executor, 2, 60000, 60000);
+
+		DetectionTask a = finishedTask("a", System.currentTimeMillis());
+		DetectionTask b = finishedTask("b", System.currentTimeMillis());
+		sessions.restore("a", a);
+		sessions.restore("b", b);
+		sessions.get(a.getId());
+		DetectionTask c = sessions.start("c", newTask(), false);
+
+		assertEquals(2, sessions.size());
+		assertSame(a, sessions.get(a.getId()));
+		assertSame(c, sessions.get(c.getId()));
+		assertNull(sessions.get(b.getId()));
+	}
+
+	@Test
+	public void testRunningDetectionsAreNotEvicted() {
+		ScanSessions sessions = new ScanSessions(executor, 2, 60000, 60000);
+
+		DetectionTask a = sessions.start("a", newTask(), false);
+		DetectionTask b = sessions.start("b", newTask(), false);
+
+		assertNull(sessions.start("c", newTask(), false));
+		assertEquals(2, sessions.size());
+		assertEquals(DetectionTask.State.QUEUED, a.getState());
+		assertEquals(DetectionTask.State.QUEUED, b.getState());
+
+		a.cancel();
+		assertNotNull(sessions.start("c", newTask(), false));
+		assertNull(sessions.get(a.getId()));
+	}
+
+	@Test
+	public void testUnusedFinishedSessionsExpire() throws InterruptedException {
+		ScanSessions sessions = new ScanSessions(executor, 8, 10, 60000);
+
+		DetectionTask a = finishedTask("a", System.currentTimeMillis());
+		sessions.restore("a", a);
+		DetectionTask b = sessions.start("b", newTask(), false);
+		Thread.sleep(50);
+
+		assertNull(sessions.get(a.getId()));
+		assertSame(b, sessions.get(b.getId()));
+		assertEquals(1, sessions.size());
+	}
+
+	@Test
+	public void testOutdatedDetectionIsReplaced() {
+		ScanSessions sessions = new ScanSessions(executor, 8, 60000, 60000);
+
+		DetectionTask recent = finishedTask("a", System.currentTimeMillis());
+		sessions.restore("a", recent);
+		assertSame(recent, sessions.start("a", newTask(), false));
+
+		DetectionTask outdated = finishedTask("b",
+				System.currentTimeMillis() - 120000);
+		sessions.restore("b", outdated);
+		DetectionTask replacement = sessions.start("b", newTask(), false);
+
+		assertNotSame(outdated, replacement);
+		assertEquals(DetectionTask.State.QUEUED, replacement.getState());
+	}
+
+}
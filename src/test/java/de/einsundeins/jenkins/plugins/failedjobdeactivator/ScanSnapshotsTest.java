@@ -0,0 +1,139 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 Jochen A. Fuerbacher, 1&1 Telecommunication SE
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.einsundeins.jenkins.plugins.failedjobdeactivator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.jvnet.hudson.test.JenkinsRule;
+
+import hudson.model.FreeStyleProject;
+import hudson.model.Job;
+
+public class ScanSnapshotsTest {
+
+	@Rule
+	public JenkinsRule j = new JenkinsRule();
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testFinishedDetectionCanBeRestored() throws Exception {
+		FreeStyleProject job = j.createFreeStyleProject("built");
+		j.buildAndAssertSuccess(job);
+
+		ScanSnapshots snapshots = new ScanSnapshots(folder.getRoot());
+		assertNull(snapshots.find(ScanSnapshots.LATEST));
+
+		// A deadline of 0 days makes every job stale.
+		DetectionTask task = new DetectionTask(new JobScanner(0, -1, ""),
+				-1);
+		task.setColumns(true, false);
+		task.setSnapshots(snapshots);
+		task.run();
+
+		File snapshot = snapshots.find(ScanSnapshots.LATEST);
+		DetectionTask restored = snapshots.read(snapshot);
+		assertTrue(restored.isRestored());
+		assertEquals(DetectionTask.State.FINISHED, restored.getState());
+		assertEquals(ScanSnapshots.getId(snapshot), restored.getId());
+		assertTrue(restored.getCheckFailureCauses());
+		assertFalse(restored.getCheckUsers());
+
+		ResultTable.Row row = restored.getResultTable().getRow("built");
+		assertEquals(job.getLastBuild().getTimeInMillis(), row.getLastBuild());
+		assertEquals(job.getLastSuccessfulBuild().getTimeInMillis(),
+				row.getLastSuccessfulBuild());
+		assertEquals(1, restored.getDetectedJobs().size());
+	}
+
+	@Test
+	public void testOnlyTheLatestSnapshotsAreKept() throws Exception {
+		ScanSnapshots snapshots = new ScanSnapshots(folder.getRoot());
+		for (int i = 0; i < ScanSnapshots.KEEP + 2; i++) {
+			DetectionTask task = new DetectionTask(
+					new JobScanner(0, -1, ""), -1);
+			task.run();
+			snapshots.write(task);
+			Thread.sleep(2);
+		}
+
+		assertEquals(ScanSnapshots.KEEP, folder.getRoot().list().length);
+	}
+
+	@Test(expected = IOException.class)
+	public void testOtherVersionIsRejected() throws Exception {
+		ScanSnapshots snapshots = new ScanSnapshots(folder.getRoot());
+		DetectionTask task = new DetectionTask(new JobScanner(0, -1, ""),
+				-1);
+		task.run();
+		snapshots.write(task);
+
+		// Overwrites the version which follows the magic number.
+		File snapshot = snapshots.find(ScanSnapshots.LATEST);
+		try (RandomAccessFile file = new RandomAccessFile(snapshot, "rw")) {
+			file.seek(4);
+			file.writeInt(2);
+		}
+		snapshots.read(snapshot);
+	}
+
+	@Test
+	public void testHandlingSkipsJobsBuiltSinceDetection() throws Exception {
+		FreeStyleProject unchanged = j.createFreeStyleProject("unchanged");
+		FreeStyleProject rebuilt = j.createFreeStyleProject("rebuilt");
+		FreeStyleProject other = j.createFreeStyleProject("other");
+
+		DetectionTask task = new DetectionTask(
+				new JobScanner(0, -1, "unchanged|rebuilt"), -1);
+		task.run();
+		j.buildAndAssertSuccess(rebuilt);
+
+		Map<Job<?, ?>, String> jobs = new HashMap<>();
+		jobs.put(unchanged, Constants.ACTION_DISABLE);
+		jobs.put(rebuilt, Constants.ACTION_DISABLE);
+		jobs.put(other, Constants.ACTION_DISABLE);
+		JobHandling handling = new JobHandling(jobs, 1);
+		handling.setExpected(task.getResultTable());
+		handling.run();
+
+		assertEquals(2, handling.getFailed());
+		assertTrue(unchanged.isDisabled());
+		assertFalse(rebuilt.isDisabled());
+		assertFalse(other.isDisabled());
+	}
+
+}
@@ -0,0 +1,116 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 Jochen A. Fuerbacher, 1&1 Telecommunication SE
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.einsundeins.jenkins.plugins.failedjobdeactivator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+import org.jvnet.hudson.test.MockFolder;
+
+import hudson.model.FreeStyleProject;
+import hudson.model.ItemGroup;
+import hudson.model.TaskListener;
+
+public class ScheduledDetectionTest {
+
+	@Rule
+	public JenkinsRule j = new JenkinsRule();
+
+	private static final ItemWalker.Filter ALL = new ItemWalker.Filter() {
+		@Override
+		public boolean shouldDescend(ItemGroup<?> group) {
+			return true;
+		}
+	};
+
+	private FreeStyleProject makeNeverBuilt(FreeStyleProject job) {
+		File buildDir = job.getBuildDir();
+		assertTrue(buildDir.isDirectory() || buildDir.mkdirs());
+		assertTrue(buildDir.setLastModified(0));
+		return job;
+	}
+
+	private List<String> walk(String after) {
+		List<String> names = new ArrayList<>();
+		ItemWalker walker = new ItemWalker(j.jenkins, ALL, after);
+		while (walker.hasNext())
+			names.add(walker.next().getFullName());
+		return names;
+	}
+
+	@Test
+	public void testSortedWalkResumesAfterCursor() throws Exception {
+		MockFolder folder = j.createFolder("b");
+		folder.createProject(FreeStyleProject.class, "y");
+		folder.createProject(FreeStyleProject.class, "x");
+		j.createFreeStyleProject("c");
+		j.createFreeStyleProject("a");
+
+		assertEquals(Arrays.asList("a", "b", "b/x", "b/y", "c"), walk(null));
+		assertEquals(Arrays.asList("b/x", "b/y", "c"), walk("b"));
+		assertEquals(Arrays.asList("b/y", "c"), walk("b/x"));
+		// The cursor survives the deletion of the item it points to.
+		assertEquals(Arrays.asList("b/y", "c"), walk("b/xa"));
+		assertEquals(Arrays.asList("c"), walk("b/y"));
+	}
+
+	@Test
+	public void testSweepIsSplitIntoSlices() throws Exception {
+		MockFolder folder = j.createFolder("folder");
+		for (int i = 0; i < 5; i++) {
+			makeNeverBuilt(folder.createProject(FreeStyleProject.class,
+					"nested" + i));
+			makeNeverBuilt(j.createFreeStyleProject("topLevel" + i));
+		}
+
+		DetectionSchedule schedule = new DetectionSchedule();
+		// The same start and end hour allow sweeps all day.
+		schedule.configure(true, 1, "", "", false, false, 0, 0, 3, 60000);
+
+		int slices = 0;
+		do {
+			ScheduledDetection.runSlice(j.jenkins, schedule,
+					TaskListener.NULL);
+			slices++;
+		} while (schedule.isSweepRunning());
+
+		// 11 items in slices of 3
+		assertEquals(4, slices);
+		assertEquals(11, schedule.getLastSweepItems());
+		assertEquals(10, schedule.getLastResult().size());
+
+		// The next sweep is due in the next time window.
+		assertFalse(schedule.isSweepDue(System.currentTimeMillis()));
+	}
+
+}
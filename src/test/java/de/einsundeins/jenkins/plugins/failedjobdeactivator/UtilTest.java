@@ -30,11 +30,13 @@ import static org.junit.Assert.assertTrue;
 import java.io.IOException;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ExecutionException;
 
 import org.junit.Rule;
 import org.junit.Test;
 import org.jvnet.hudson.test.JenkinsRule;
+import org.jvnet.hudson.test.MockFolder;
 
 import com.sonyericsson.jenkins.plugins.bfa.model.FailureCause;
 import com.sonyericsson.jenkins.plugins.bfa.model.FailureCauseBuildAction;
@@ -44,6 +46,7 @@ import hudson.model.FreeStyleBuild;
 import hudson.model.FreeStyleProject;
 import hudson.model.Job;
 import hudson.model.queue.QueueTaskFuture;
+import net.sf.json.JSONObject;
 
 public class UtilTest {
 
@@ -126,4 +129,24 @@ public class UtilTest {
 		assertEquals("I am a Job", job2.getDisplayName());
 	}
 
+	@Test
+	public void testConvertJsonToMapUsesFullNames() throws Exception {
+		FreeStyleProject topLevel = j.createFreeStyleProject("job");
+		MockFolder folder = j.createFolder("folder");
+		FreeStyleProject nested = folder
+				.createProject(FreeStyleProject.class, "job");
+
+		JSONObject json = new JSONObject();
+		json.put("job", "disable");
+		json.put("folder/job", "delete");
+		json.put("folder/unknown", "delete");
+		json.put("folder", "ignore");
+
+		Map<Job<?, ?>, String> map = Util.convertJsonToMap(json);
+
+		assertEquals(2, map.size());
+		assertEquals("disable", map.get(topLevel));
+		assertEquals("delete", map.get(nested));
+	}
+
 }